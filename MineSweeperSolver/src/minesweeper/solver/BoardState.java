@@ -4,10 +4,12 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import minesweeper.gamestate.GameStateListener;
 import minesweeper.gamestate.GameStateModel;
 import minesweeper.gamestate.MoveMethod;
 import minesweeper.solver.BoardStateCache.AdjacentSquares;
@@ -23,6 +25,17 @@ public class BoardState {
 	private final static int[] DX = {0, 1, 1, 1, 0, -1, -1, -1};
 	private final static int[] DY = {-1, -1, 0, 1, 1, 1, 0, -1};
 
+	// the order a scan of the board visits the locations, column by column
+	private final static Comparator<Location> SORT_BY_COLUMN = new Comparator<Location>() {
+		@Override
+		public int compare(Location o1, Location o2) {
+			if (o1.x != o2.x) {
+				return o1.x - o2.x;
+			}
+			return o1.y - o2.y;
+		}
+	};
+
 	//private AdjacentSquares[][] adjacentLocations1;
 	//private AdjacentSquares[][] adjacentLocations2;
 
@@ -41,6 +54,9 @@ public class BoardState {
 	private Action[][] action;
 	private List<Action> actionList = new ArrayList<Action>();
 
+	// the locations with an action against them which may still need to be played
+	private final List<Location> pending = new ArrayList<>();
+
 	private final GameStateModel myGame;
 	private final Solver solver;
 	private final int height;
@@ -50,12 +66,54 @@ public class BoardState {
 	private int confirmedMinesTotal = 0;
 	private int numOfHidden = 0;
 
+	// the flags on the board and the other unrevealed tiles, with how many of each the solver has confirmed are mines
+	private int flagCount = 0;
+	private int hiddenCount = 0;
+	private int confirmedOnFlag = 0;
+	private int confirmedHidden = 0;
+
+	// the tiles the game has told us have changed since the last process
+	private final boolean[][] changed;
+	private final List<Location> changes = new ArrayList<>();
+
+	// the tiles next to which a witness may have died since the last process
+	private final boolean[][] witnessCheck;
+	private final List<Location> witnessChecks = new ArrayList<>();
+
+	// the whole board is scanned on the first process and while a revealed tile has been hidden again
+	private boolean fullScan = true;
+
+	private final GameStateListener listener = new GameStateListener() {
+		@Override
+		public void tileRevealed(int x, int y) {
+			tileChanged(x, y);
+		}
+
+		@Override
+		public void tileHidden(int x, int y) {
+			tileChanged(x, y);
+		}
+
+		@Override
+		public void flagChanged(int x, int y, boolean flagged) {
+			tileChanged(x, y);
+		}
+
+		@Override
+		public void exploded(int x, int y) {
+			getLogger().log(Level.INFO, "Mine exploded at (%d, %d)", x, y);
+		}
+	};
+
 	private int[] unplayedMoves;
 
 	private int testMoveBalance = 0;
 	
 	private Set<Location> livingWitnesses = new HashSet<>();
 	
+	// the solver's edge, which is told about the tiles which change so it can keep itself up to date
+	private EdgeWeb edgeWeb;
+	
 	private final Cache cache;
 	
 	public BoardState(Solver solver) {
@@ -76,6 +134,9 @@ public class BoardState {
 		
 		action = new Action[myGame.getWidth()][myGame.getHeight()];
 
+		changed = new boolean[myGame.getWidth()][myGame.getHeight()];
+		witnessCheck = new boolean[myGame.getWidth()][myGame.getHeight()];
+
 		// look up the adjacent squares details
 		cache = BoardStateCache.getInstance().getAdjacentSquares1(myGame.getWidth(), myGame.getHeight());
 		//adjacentLocations1 = cache.adjacentLocations1;
@@ -103,14 +164,289 @@ public class BoardState {
 			}
 		}
 
+		myGame.addGameStateListener(listener);
+
 
 	}
 
 	public void process() {
 
-		totalFlags = 0;
-		confirmedMinesTotal = 0;
-		numOfHidden = 0;
+		// clear down the moves we collected last turn
+		actionList.clear();
+
+		// only the tiles which have changed need looking at, unless the whole board needs scanning
+		List<Location> changedTiles = takeChanges();
+		if (fullScan || !applyChanges(changedTiles)) {
+			scanBoard();
+		} else {
+			checkPending();
+			removeDeadWitnesses();
+		}
+
+		if (solver.getPlayStyle().flagless || solver.getPlayStyle().efficiency) {  // if we are playing flags free then all confirmed mines are consider to be flagged
+			totalFlags = flagCount + confirmedHidden;
+			confirmedMinesTotal = confirmedOnFlag + confirmedHidden;
+			numOfHidden = flagCount - confirmedOnFlag + hiddenCount - confirmedHidden;
+		} else {
+			totalFlags = flagCount;
+			confirmedMinesTotal = confirmedOnFlag;
+			numOfHidden = flagCount - confirmedOnFlag + hiddenCount;    // flags on the board which we can't confirm are still hidden
+		}
+
+		// this sorts the moves by when they were discovered
+		Collections.sort(actionList, Action.SORT_BY_MOVE_NUMBER);
+
+		unplayedMoves = new int[MoveMethod.values().length];
+
+		// accumulate how many unplayed moves there are by method
+		for (Action a: actionList) {
+			unplayedMoves[a.getMoveMethod().ordinal()]++;
+		}
+
+		getLogger().log(Level.INFO, "Moves left to play is %d", actionList.size());
+		for (int i=0; i < unplayedMoves.length; i++) {
+			if (unplayedMoves[i] != 0) {
+				getLogger().log(Level.INFO, "   %s has %d moves unplayed",MoveMethod.values()[i], unplayedMoves[i]);
+			}
+		}
+
+
+	}
+
+	/**
+	 * Tell this edge about the tiles which change
+	 */
+	protected void setEdgeWeb(EdgeWeb edgeWeb) {
+		this.edgeWeb = edgeWeb;
+		edgeWeb.rebuild();
+	}
+
+	/**
+	 * Stop being told about changes to the game
+	 */
+	protected void detach() {
+		myGame.removeGameStateListener(listener);
+	}
+
+	// remember the tile has changed, the game can be played on a different thread to the solver
+	private void tileChanged(int x, int y) {
+
+		synchronized (changes) {
+			if (!changed[x][y]) {
+				changed[x][y] = true;
+				changes.add(getLocation(x, y));
+			}
+		}
+
+	}
+
+	// the tiles which have changed since the last time this was called, in the order a scan of the board would find them
+	private List<Location> takeChanges() {
+
+		List<Location> result;
+		synchronized (changes) {
+			result = new ArrayList<>(changes);
+			for (Location l: changes) {
+				changed[l.x][l.y] = false;
+			}
+			changes.clear();
+		}
+
+		Collections.sort(result, SORT_BY_COLUMN);
+
+		return result;
+	}
+
+	// bring the changed tiles up to date, returns false if a revealed tile has been hidden again and the board needs scanning
+	private boolean applyChanges(List<Location> changedTiles) {
+
+		for (Location location: changedTiles) {
+
+			int i = location.x;
+			int j = location.y;
+
+			int info = myGame.query(location);
+
+			if (info == GameStateModel.FLAG) {
+				if (revealed[i][j]) {
+					return false;
+				}
+				if (!flagOnBoard[i][j]) {
+					removeHidden(i, j);
+					addFlag(i, j);
+				}
+
+			} else if (info == GameStateModel.HIDDEN) {
+				if (revealed[i][j]) {
+					return false;
+				}
+				if (flagOnBoard[i][j]) {
+					removeFlag(i, j);
+					addHidden(i, j);
+				}
+
+			} else if (!revealed[i][j]) {
+				if (flagOnBoard[i][j]) {
+					removeFlag(i, j);
+				} else {
+					removeHidden(i, j);
+				}
+				reveal(location, info);
+			}
+
+		}
+
+		return true;
+	}
+
+	// look again at the actions found in earlier turns, those not yet played are added to the list of actions to play this turn
+	private void checkPending() {
+
+		Collections.sort(pending, SORT_BY_COLUMN);
+
+		List<Location> stillPending = new ArrayList<>(pending.size());
+		for (Location l: pending) {
+
+			Action act = action[l.x][l.y];
+
+			// if the move isn't a certainty then don't bother with it. The opening book is a certainty on the first move, but isn't really if the player plays somewhere else.
+			if (!act.isCertainty() || act.getMoveMethod() == MoveMethod.BOOK) {
+				action[l.x][l.y] = null;
+
+			} else if (flagOnBoard[l.x][l.y]) {
+				// if the board is a flag, but we are 100% sure its a clear then remove the flag then clear the square
+				if (act.getAction() == Action.CLEAR) {
+					actionList.add(new Action(act, Action.FLAG, MoveMethod.CORRECTION, "Remove flag", BigDecimal.ONE, 0));
+					actionList.add(act);
+				}
+				stillPending.add(l);
+
+			} else if (!revealed[l.x][l.y]) {
+				if ((solver.getPlayStyle().flagless || solver.getPlayStyle().efficiency) && act.getAction() == Action.FLAG) {
+					// unless the we are playing flag free and it's a flag
+				} else {
+					actionList.add(act);
+				}
+				stillPending.add(l);
+			}
+
+		}
+
+		pending.clear();
+		pending.addAll(stillPending);
+
+	}
+
+	// remove the living witnesses next to the tiles which have changed if they no longer have any unrevealed neighbours
+	private void removeDeadWitnesses() {
+
+		for (Location l: witnessChecks) {
+			witnessCheck[l.x][l.y] = false;
+			removeIfDead(l);
+			for (Location a: getAdjacentSquaresIterable(l)) {
+				removeIfDead(a);
+			}
+		}
+		witnessChecks.clear();
+
+	}
+
+	private void removeIfDead(Location wit) {
+		if (this.countAdjacentUnrevealed(wit) == 0) {
+			livingWitnesses.remove(wit);
+		}
+	}
+
+	private void checkWitnessesNear(Location l) {
+		if (!witnessCheck[l.x][l.y]) {
+			witnessCheck[l.x][l.y] = true;
+			witnessChecks.add(l);
+		}
+	}
+
+	private void addFlag(int i, int j) {
+
+		flagOnBoard[i][j] = true;
+		flagCount++;
+		if (confirmedMine[i][j]) {
+			confirmedOnFlag++;
+		}
+
+		// inform its neighbours they have a flag on the board
+		for (int k=0; k < DX.length; k++) {
+			if (i + DX[k] >= 0 && i + DX[k] < width && j + DY[k] >= 0 && j + DY[k] < height) {
+				adjFlagsOnBoard[i + DX[k]][j + DY[k]]++;
+			}
+		}
+
+	}
+
+	private void removeFlag(int i, int j) {
+
+		flagOnBoard[i][j] = false;
+		flagCount--;
+		if (confirmedMine[i][j]) {
+			confirmedOnFlag--;
+		}
+
+		for (int k=0; k < DX.length; k++) {
+			if (i + DX[k] >= 0 && i + DX[k] < width && j + DY[k] >= 0 && j + DY[k] < height) {
+				adjFlagsOnBoard[i + DX[k]][j + DY[k]]--;
+			}
+		}
+
+	}
+
+	private void addHidden(int i, int j) {
+		hiddenCount++;
+		if (confirmedMine[i][j]) {
+			confirmedHidden++;
+		}
+	}
+
+	private void removeHidden(int i, int j) {
+		hiddenCount--;
+		if (confirmedMine[i][j]) {
+			confirmedHidden--;
+		}
+	}
+
+	// set up a newly revealed location and inform it's neighbours they have one less unrevealed adjacent location
+	private void reveal(Location location, int info) {
+
+		int i = location.x;
+		int j = location.y;
+
+		livingWitnesses.add(location);  // add this to living witnesses
+		//display("Location (" + i + "," + j + ") is revealed");
+
+		revealed[i][j] = true;
+		board[i][j] = info;
+
+		for (int k=0; k < DX.length; k++) {
+			if (i + DX[k] >= 0 && i + DX[k] < width && j + DY[k] >= 0 && j + DY[k] < height) {
+				adjUnrevealed[i + DX[k]][j + DY[k]]--;
+			}
+		}
+
+		checkWitnessesNear(location);
+		edgeChanged(location);
+
+	}
+	
+	private void edgeChanged(Location location) {
+		if (edgeWeb != null) {
+			edgeWeb.tileChanged(location);
+		}
+	}
+
+	// load up everything we can see on the board
+	private void scanBoard() {
+
+		flagCount = 0;
+		hiddenCount = 0;
+		confirmedOnFlag = 0;
+		confirmedHidden = 0;
 
 		// clear down this array, which is a lot faster then defining it fresh
 		for (int i=0; i < width; i++) {
@@ -119,10 +455,11 @@ public class BoardState {
 			}
 		}
 
-		// clear down the moves we collected last turn
-		actionList.clear();
-		
-		// load up what we can see on the board
+		pending.clear();
+
+		// if a revealed tile has been hidden again then keep scanning the whole board
+		boolean stale = false;
+
 		for (int i=0; i < width; i++) {
 			for (int j=0; j < height; j++) {
 				
@@ -141,21 +478,8 @@ public class BoardState {
 
 				if (info != GameStateModel.HIDDEN) {
 					if (info == GameStateModel.FLAG) {
-						totalFlags++;
-						flagOnBoard[i][j] = true;
-						
-						// inform its neighbours they have a flag on the board
-						for (int k=0; k < DX.length; k++) {
-							if (i + DX[k] >= 0 && i + DX[k] < width && j + DY[k] >= 0 && j + DY[k] < height) {
-								adjFlagsOnBoard[i + DX[k]][j + DY[k]]++;
-							}
-						}    							
-
-						if (confirmedMine[i][j]) {    // mine found by solver
-							confirmedMinesTotal++;
-						} else {
-							numOfHidden++;           // flag on the board but we can't confirm it
-						}
+						stale = stale || revealed[i][j];
+						addFlag(i, j);
 
 						// if the board is a flag, but we are 100% sure its a clear then remove the flag
 						// then clear the square
@@ -163,34 +487,21 @@ public class BoardState {
 							actionList.add(new Action(act, Action.FLAG, MoveMethod.CORRECTION, "Remove flag", BigDecimal.ONE, 0));
 							actionList.add(act);
 						}
+						if (act != null) {
+							pending.add(location);
+						}
 
 					} else {
 
-						// if this is a new unrevealed location then set it up and inform it's neighbours they have one less unrevealed adjacent location
+						// if this is a new unrevealed location then set it up
 						if (!revealed[i][j]) {
-
-							livingWitnesses.add(location);  // add this to living witnesses
-							//display("Location (" + i + "," + j + ") is revealed");
-							
-							revealed[i][j] = true;
-							board[i][j] = info;            
-
-							for (int k=0; k < DX.length; k++) {
-								if (i + DX[k] >= 0 && i + DX[k] < width && j + DY[k] >= 0 && j + DY[k] < height) {
-									adjUnrevealed[i + DX[k]][j + DY[k]]--;
-								}
-							}    	
-
+							reveal(location, info);
 						}
 
 					}
 				} else {
-					if ((solver.getPlayStyle().flagless || solver.getPlayStyle().efficiency) && confirmedMine[i][j]) {  // if we are playing flags free then all confirmed mines are consider to be flagged
-						confirmedMinesTotal++;   
-						totalFlags++;
-					} else {
-						numOfHidden++;
-					}
+					stale = stale || revealed[i][j];
+					addHidden(i, j);
 
 					// if we have an action against this location which we are 100% sure about then do it
 					if (act != null && act.isCertainty()) {
@@ -201,6 +512,9 @@ public class BoardState {
 						}
 
 					}
+					if (act != null) {
+						pending.add(location);
+					}
 				}
 
 			}
@@ -214,25 +528,17 @@ public class BoardState {
 			}
 		}
 		livingWitnesses.removeAll(toRemove);
-		
-		
-		// this sorts the moves by when they were discovered
-		Collections.sort(actionList, Action.SORT_BY_MOVE_NUMBER);
-
-		unplayedMoves = new int[MoveMethod.values().length];
 
-		// accumulate how many unplayed moves there are by method
-		for (Action a: actionList) {
-			unplayedMoves[a.getMoveMethod().ordinal()]++;
+		for (Location l: witnessChecks) {
+			witnessCheck[l.x][l.y] = false;
 		}
+		witnessChecks.clear();
 
-		getLogger().log(Level.INFO, "Moves left to play is %d", actionList.size());
-		for (int i=0; i < unplayedMoves.length; i++) {
-			if (unplayedMoves[i] != 0) {
-				getLogger().log(Level.INFO, "   %s has %d moves unplayed",MoveMethod.values()[i], unplayedMoves[i]);
-			}
-		}
+		fullScan = stale;
 
+		if (edgeWeb != null) {
+			edgeWeb.rebuild();
+		}
 
 	}
 
@@ -266,6 +572,7 @@ public class BoardState {
 		}
 
 		action[a.x][a.y] = a;
+		pending.add(getLocation(a.x, a.y));
 
 		if (a.getAction() == Action.FLAG) {
 			setMineFound(a);
@@ -519,6 +826,10 @@ public class BoardState {
 		return new ArrayList<>(livingWitnesses);
 	}
 	
+	protected boolean isLivingWitness(Location l) {
+		return livingWitnesses.contains(l);
+	}
+	
 	
 	/**
 	 * Return a list of Unrevealed Locations adjacent to this one
@@ -673,6 +984,14 @@ public class BoardState {
 			totalFlags++;
 		}
 
+		if (flagOnBoard[loc.x][loc.y]) {
+			confirmedOnFlag++;
+		} else if (!revealed[loc.x][loc.y]) {
+			confirmedHidden++;
+		}
+		checkWitnessesNear(loc);
+		edgeChanged(loc);
+
 		// let all the adjacent squares know they have one more flag next to them and one less unrevealed location
 		for (Location a: getAdjacentSquaresIterable(loc)) {
 			adjFlagsConfirmed[a.x][a.y]++;
@@ -696,11 +1015,18 @@ public class BoardState {
 			totalFlags--;
 		}
 
+		if (flagOnBoard[loc.x][loc.y]) {
+			confirmedOnFlag--;
+		} else if (!revealed[loc.x][loc.y]) {
+			confirmedHidden--;
+		}
+
 		// let all the adjacent squares know they have one less mine next to them and one more unrevealed location
 		for (Location a: getAdjacentSquaresIterable(loc)) {
 			adjFlagsConfirmed[a.x][a.y]--;
 			adjUnrevealed[a.x][a.y]++;
 		}
+		edgeChanged(loc);
 		
 	}
 	
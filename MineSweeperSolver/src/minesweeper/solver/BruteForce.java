@@ -4,13 +4,17 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import Monitor.AsynchMonitor;
 import minesweeper.solver.constructs.CandidateLocation;
 import minesweeper.solver.constructs.Square;
 import minesweeper.solver.constructs.Witness;
-import minesweeper.solver.iterator.WitnessWebIterator;
+import minesweeper.solver.iterator.WitnessWebSearchIterator;
 import minesweeper.solver.utility.Logger.Level;
 import minesweeper.structure.Location;
 
@@ -18,6 +22,11 @@ public class BruteForce {
 
 	//private final static BigDecimal ZERO_THRESHOLD = new BigDecimal("0.25");
 	
+	// the search is split until each task is at most this fraction of a core's share, so idle threads have work to steal
+	private final static int TASKS_PER_CORE = 16;
+	
+	private final static ForkJoinPool BRUTE_FORCE_POOL = new ForkJoinPool(Solver.CORES);
+	
 	
 	private final WitnessWeb web;
 	private final Solver solver;
@@ -42,7 +51,58 @@ public class BruteForce {
 	private BigInteger iterations;
 	
 	private BruteForceAnalysisModel bruteForceAnalysis;
+	
+	private final AtomicInteger actIterations = new AtomicInteger();
+	
+	private volatile boolean stopped = false;  // set if the solver stopped the search before it finished
+
+	// a part of the search with the first squares locked, which splits itself in two until it is small enough to crunch
+	private class CrunchTask extends RecursiveAction {
 
+		private static final long serialVersionUID = 1L;
+		
+		private final boolean[] prefix;
+		private final WitnessWebSearchIterator iterator;
+		private final BigInteger leafSize;
+		private final List<CrunchResult> results;
+		
+		private CrunchTask(boolean[] prefix, WitnessWebSearchIterator iterator, BigInteger leafSize, List<CrunchResult> results) {
+			this.prefix = prefix;
+			this.iterator = iterator;
+			this.leafSize = leafSize;
+			this.results = results;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (solver.isStopped()) {
+				stopped = true;
+				return;
+			}
+			
+			if (prefix.length == iterator.getLocations().size() || estimate(prefix).compareTo(leafSize) <= 0) {
+				results.add(crunch(iterator));
+				return;
+			}
+			
+			// lock the next square as a mine and as a clear, ignoring any half which can't have a solution
+			List<CrunchTask> tasks = new ArrayList<>(2);
+			for (boolean mine: new boolean[] {true, false}) {
+				boolean[] next = Arrays.copyOf(prefix, prefix.length + 1);
+				next[prefix.length] = mine;
+				WitnessWebSearchIterator nextIterator = new WitnessWebSearchIterator(web, mines, next);
+				if (nextIterator.isPossible()) {
+					tasks.add(new CrunchTask(next, nextIterator, leafSize, results));
+				}
+			}
+			
+			invokeAll(tasks);
+			
+		}
+		
+	}
+	
 	public BruteForce(Solver solver, BoardState boardState, WitnessWeb web, int mines, BigInteger maxIterations, int bfMaxSolutions, String scope) {
 
 		this.solver = solver;
@@ -83,12 +143,24 @@ public class BruteForce {
 			if (iterations.compareTo(maxIterations) <= 0) {
 	
 				//display("Brute Force about to process " + iterations + " iterations");
-				WitnessWebIterator[] iterators = buildParallelIterators(mines, iterations);
+				WitnessWebSearchIterator iterator = new WitnessWebSearchIterator(web, mines);
 
-				this.bruteForceAnalysis = new BruteForceAnalysis(solver, iterators[0].getLocations(), bfMaxSolutions, scope, solver.bfdaStartLocations());
+				this.bruteForceAnalysis = new BruteForceAnalysis(solver, iterator.getLocations(), bfMaxSolutions, scope, solver.bfdaStartLocations());
 
-			
-				crunchResult  = crunchParallel(web.getSquares(), web.getPrunedWitnesses(), true, iterators);
+				if (iterations.compareTo(Solver.PARALLEL_MINIMUM) < 0 || web.getPrunedWitnesses().size() == 0 || solver.preferences.isSingleThread()) {
+					solver.logger.log(Level.DEBUG, "Only a single iterator will be used");
+					crunchResult = crunch(iterator);
+				} else {
+					crunchResult = crunchParallel(iterator);
+				}
+
+				// an incomplete search can't be used, since it would find the wrong solutions
+				if (stopped) {
+					solver.logger.log(Level.INFO, "Brute force was stopped after %d iterations, so the result is being discarded", actIterations.get());
+					crunchResult = null;
+					this.bruteForceAnalysis = null;
+					return;
+				}
 
 				// if there are too many to process then don't bother 
 				if (this.bruteForceAnalysis != null && this.bruteForceAnalysis.tooMany()) {
@@ -96,12 +168,7 @@ public class BruteForce {
 				}
 				
 			
-				int actIterations = 0;
-				for (WitnessWebIterator i: iterators) {
-					actIterations = actIterations + i.getIterations();
-				}
-
-				solver.logger.log(Level.DEBUG, "Expected iterations %d Actual iterations %d", iterations, actIterations);
+				solver.logger.log(Level.DEBUG, "Expected iterations %d Actual iterations %d", iterations, actIterations.get());
 
 				solver.logger.log(Level.INFO, "Found %d candidate solutions in the %s", crunchResult.bigGoodCandidates, scope);
 				
@@ -155,77 +222,59 @@ public class BruteForce {
 
 	}
 
-	// break a witness web search into a number of non-overlapping iterators
-	private WitnessWebIterator[] buildParallelIterators(int mines, BigInteger totalIterations) {
+	// crunch the solutions of the iterator on this thread
+	private CrunchResult crunch(WitnessWebSearchIterator iterator) {
 
-		solver.logger.log(Level.DEBUG, "Building parallel iterators");
+		Cruncher cruncher = new Cruncher(boardState, iterator.getLocations(), web.getPrunedWitnesses(), iterator, false, bruteForceAnalysis);
+		cruncher.start();
 
-		//WitnessWebIterator[] result1 = new WitnessWebIterator[1];
-		//result1[0] = new WitnessWebIterator(web, mines);
-		//return result1;
+		if (cruncher.isStopped()) {
+			stopped = true;
+		}
 
-		solver.logger.log(Level.DEBUG, "Non independent iterations %d", web.getNonIndependentIterations(mines));
+		actIterations.addAndGet(iterator.getIterations());
 
+		return cruncher.getResult();
 
-		// if there is only one cog then we can't lock it,so send back a single iterator
-		if (web.getIndependentWitnesses().size() == 1 && web.getIndependentMines() >= mines || totalIterations.compareTo(Solver.PARALLEL_MINIMUM) < 0 
-				|| web.getPrunedWitnesses().size() == 0 || solver.preferences.isSingleThread()) {
-			solver.logger.log(Level.DEBUG, "Only a single iterator will be used");
-			WitnessWebIterator[] result = new WitnessWebIterator[1];
-			result[0] = new WitnessWebIterator(web, mines);
-			return result;
-		}
+	}
 
-		int witMines = web.getIndependentWitnesses().get(0).getMines();
-		int squares = web.getIndependentWitnesses().get(0).getSquares().size();
+	// split the search into tasks on the fork/join pool, so an idle thread can steal part of a busy thread's work, and merge the results at the end
+	private CrunchResult crunchParallel(WitnessWebSearchIterator iterator) {
 
-		BigInteger bigIterations = Solver.combination(witMines, squares);
+		BigInteger leafSize = estimate(new boolean[0]).divide(BigInteger.valueOf(Solver.CORES * TASKS_PER_CORE));
 
-		int iter = bigIterations.intValue();
+		solver.logger.log(Level.DEBUG, "Splitting the brute force into tasks of at most %d iterations", leafSize);
 
-		solver.logger.log(Level.DEBUG, "The first cog has %d iterations, so parallel processing is possible", iter);
+		List<CrunchResult> results = Collections.synchronizedList(new ArrayList<>());
 
-		WitnessWebIterator[] result = new WitnessWebIterator[iter];
+		BRUTE_FORCE_POOL.invoke(new CrunchTask(new boolean[0], iterator, leafSize, results));
 
-		for (int i=0; i < iter; i++) {
-			result[i] = new WitnessWebIterator(web, mines, i);   // create a iterator with a lock first got at position i
+		if (stopped) {
+			return null;
 		}
 
+		// every part of the search was found to be impossible, so there are no solutions
+		if (results.isEmpty()) {
+			return crunch(iterator);
+		}
 
+		solver.logger.log(Level.DEBUG, "Brute force was processed by %d tasks", results.size());
 
-		return result;
+		return CrunchResult.bigMerge(results.toArray(new CrunchResult[0]));
 
 	}
 
-	// process the iterators in parallel
-	private CrunchResult crunchParallel(List<Square> square, List<Witness> witness, boolean calculateDistribution, WitnessWebIterator... iterator) {
-
-		solver.logger.log(Level.DEBUG, "At parallel iterator processing");
-
-		Cruncher[] crunchers = new Cruncher[iterator.length];
+	// the number of ways the mines left can be placed in the squares after the locked ones
+	private BigInteger estimate(boolean[] prefix) {
 
-		for (int i=0; i < iterator.length; i++) {
-			crunchers[i] = new Cruncher(boardState, iterator[i].getLocations(), witness, iterator[i], false, bruteForceAnalysis);
-		}
-
-		AsynchMonitor monitor = new AsynchMonitor(crunchers);
-		monitor.setMaxThreads(Solver.CORES);
-		try {
-			monitor.startAndWait();
-		} catch (Exception ex) {
-			solver.logger.log(Level.ERROR, "Parallel processing caused an error: %s", ex.getMessage());
-			ex.printStackTrace();
-		}
-
-		CrunchResult[] results = new CrunchResult[crunchers.length];
-		for (int i=0; i < crunchers.length; i++) {
-			results[i] = crunchers[i].getResult();
+		int minesLeft = mines;
+		for (boolean mine: prefix) {
+			if (mine) {
+				minesLeft--;
+			}
 		}
 
-		CrunchResult result = CrunchResult.bigMerge(results);
-
-		return result;
-
+		return Solver.combination(minesLeft, web.getSquares().size() - prefix.length);
 	}
 
 	private boolean findCertainClear(CrunchResult output) {
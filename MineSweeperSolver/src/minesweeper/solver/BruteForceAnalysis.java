@@ -5,10 +5,13 @@ import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import minesweeper.gamestate.GameStateModel;
 import minesweeper.gamestate.MoveMethod;
@@ -19,18 +22,31 @@ import minesweeper.structure.Location;
 
 public class BruteForceAnalysis extends BruteForceAnalysisModel{
 	
-	// used to hold all the solutions left in the game
+	// used to hold all the solutions left in the game, the values of each location are held in their own column
 	private class SolutionTable {
 		
-		private final byte[][] solutions;
+		private final int maxSize;
+		private byte[][] columns;
 		private int size = 0;
 
-		private SolutionTable(int maxSize) {
-			solutions = new byte[maxSize][];
+		private SolutionTable(int locations, int maxSize) {
+			this.maxSize = maxSize;
+			this.columns = new byte[locations][Math.min(maxSize, INITIAL_SOLUTIONS)];
 		}
 		
 		private void addSolution(byte[] solution) {
-			solutions[size] = solution;
+			
+			// make the columns bigger if they are full
+			if (size == columns[0].length) {
+				int capacity = (int) Math.min(maxSize, 2L * size);
+				for (int i=0; i < columns.length; i++) {
+					columns[i] = Arrays.copyOf(columns[i], capacity);
+				}
+			}
+			
+			for (int i=0; i < columns.length; i++) {
+				columns[i][size] = solution[i];
+			}
 			size++;
 		};
 		
@@ -38,79 +54,76 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 			return size;
 		}
 		
-		private byte[] get(int index) {
-			return solutions[index];
-		}
-		
-		private void sortSolutions(int start, int end, int index) {
-
-			Arrays.sort(solutions, start, end, sorters[index]);
-			
-		}
-		
-	}
-	
-	/**
-	 * This sorts solutions by the value of a position
-	 */
-	private class SortSolutions implements Comparator<byte[]> {
-
-		private final int sortIndex;
-		
-		public SortSolutions(int index) {
-			sortIndex = index;
+		private byte[] column(int location) {
+			return columns[location];
 		}
 		
-		@Override
-		public int compare(byte[] o1, byte[] o2) {
-			return o1[sortIndex] - o2[sortIndex];
+		private byte value(int location, int solution) {
+			return columns[location][solution];
 		}
 		
 	}
 	
 	/**
-	 * A key to uniquely identify a position
+	 * A key to uniquely identify a position. The value of each location is packed into 4 bits, with 15 when the value isn't known
 	 */
 	private class Position {
 		
-		private final byte[] position;
-		private int hash;
+		private final long[] key;
+		private final int hash;
 		
 		private Position() {
-			position = new byte[locations.size()];
-			for (int i=0; i < position.length; i++) {
-				position[i] = 15;
-			}
+			key = new long[keyWords];
+			Arrays.fill(key, -1L);
+			hash = Arrays.hashCode(key);
 		}
 		
 		private Position(Position p, int index, int value) {
 			// copy and update to reflect the new position
-			position = Arrays.copyOf(p.position, p.position.length);
-			position[index] = (byte) (value + 50);			
+			key = Arrays.copyOf(p.key, p.key.length);
+			int shift = (index & 15) * 4;
+			key[index >>> 4] = (key[index >>> 4] & ~(15L << shift)) | ((long) value << shift);
+			hash = Arrays.hashCode(key);
+		}
+		
+		// the position reached on the board, where the revealed locations have their values
+		private Position(BoardState boardState) {
+			key = new long[keyWords];
+			Arrays.fill(key, -1L);
+			for (int i=0; i < locations.size(); i++) {
+				if (boardState.isRevealed(locations.get(i))) {
+					int shift = (i & 15) * 4;
+					key[i >>> 4] = (key[i >>> 4] & ~(15L << shift)) | ((long) boardState.getWitnessValue(locations.get(i)) << shift);
+				}
+			}
+			hash = Arrays.hashCode(key);
+		}
+		
+		// the value of the location or 15 if it isn't known
+		private int getValue(int index) {
+			return (int) (key[index >>> 4] >>> ((index & 15) * 4)) & 15;
+		}
+		
+		// true if the solution has the value of every location known in this position
+		private boolean matches(int solution) {
+			for (int i=0; i < locations.size(); i++) {
+				int value = getValue(i);
+				if (value != 15 && allSolutions.value(i, solution) != value) {
+					return false;
+				}
+			}
+			return true;
 		}
 		
 		@Override
-		// copied from String hash
 		public int hashCode() {
-	        int h = hash;
-	        if (h == 0 && position.length > 0) {
-	            for (int i = 0; i < position.length; i++) {
-	                h = 31 * h + position[i];
-	            }
-	            hash = h;
-	        }
-	        return h;
+	        return hash;
 		}
 		
 		@Override
 		public boolean equals(Object o) {
 			if (o instanceof Position) {
-				for (int i=0; i < position.length; i++) {
-					if (this.position[i] != ((Position) o).position[i]) {
-						return false;
-					}
-				}
-				return true;
+				return Arrays.equals(key, ((Position) o).key);
 			} else {
 				return false;
 			}
@@ -146,14 +159,14 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		 * @param location
 		 * @return
 		 */
-		private void buildChildNodes(Node parent) {
+		private void buildChildNodes(Node parent, WorkArea area) {
 			
-			// sort the solutions by possible values
-			allSolutions.sortSolutions(parent.startLocation, parent.endLocation, this.index);
+			// partition the solutions by possible values
+			area.partition(parent.startLocation, parent.endLocation, this.index);
 			int index = parent.startLocation;
 			
 			// skip over the mines
-			while (index < parent.endLocation && allSolutions.get(index)[this.index] == GameStateModel.MINE) {
+			while (index < parent.endLocation && area.value(index, this.index) == GameStateModel.MINE) {
 				index++;
 			}
 			
@@ -161,38 +174,27 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 			Node[] work = new Node[9];
 			for (int i=this.minValue; i < this.maxValue + 1; i++) {
 				
-				// if the node is in the cache then use it
-				Position pos = new Position(parent.position, this.index, i);
+				Node temp = new Node(new Position(parent.position, this.index, i));
 				
-				Node temp1 = cache.get(pos);
-				if (temp1 == null) {
-
-					Node temp = new Node(pos);
-					
-					temp.startLocation = index;
-					// find all solutions for this values at this location
-					while (index < parent.endLocation && allSolutions.get(index)[this.index] == i) {
-						index++;
-					}					
-					temp.endLocation = index;
-					
-					work[i] = temp;
-
-					
-				} else {
-					//System.out.println("In cache " + temp.position.key + " " + temp1.position.key);
-					//if (!temp.equals(temp1)) {
-					//	System.out.println("Cache not equal!!");
-					//}
-					//temp1.fromCache = true;
-					work[i] = temp1;
-					cacheHit++;
-					cacheWinningLines = cacheWinningLines + temp1.winningLines;
-					// skip past these details in the array
-					while (index < parent.endLocation && allSolutions.get(index)[this.index] <= i) {
-						index++;
-					}					
+				temp.startLocation = index;
+				// find all solutions for this values at this location
+				while (index < parent.endLocation && area.value(index, this.index) == i) {
+					index++;
+				}					
+				temp.endLocation = index;
+				
+				// if the position is in the cache then use its winning lines
+				if (temp.getSolutionSize() > 0) {
+					int winningLines = cache.get(temp.position.key);
+					if (winningLines != TranspositionTable.NOT_FOUND) {
+						temp.winningLines = winningLines;
+						temp.fromCache = true;
+						cacheHit.incrementAndGet();
+						cacheWinningLines.addAndGet(winningLines);
+					}
 				}
+				
+				work[i] = temp;
 
 			}
 
@@ -258,7 +260,8 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		
 		private int winningLines = 0;      // this is the number of winning lines below this position in the tree
 		private int work = 0;              // this is a measure of how much work was needed to calculate WinningLines value
-		private boolean fromCache = false; // indicates whether this position came from the cache
+		private boolean fromCache = false; // indicates the winning lines came from the cache, so there is no tree below this position
+		private boolean cutOff = false;    // indicates the anytime analysis stopped at this position, so there is no tree below it
 		
 		private int startLocation;              // the first solution in the solution array that applies to this position
 		private int endLocation;                // the last + 1 solution in the solution array that applies to this position
@@ -295,23 +298,19 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		
 		/**
 		 * Calculate the number of winning lines if this move is played at this position
-		 * Used at top of the game tree
+		 * Used at top of the game tree, where the cutoff is the best winning lines found so far
 		 */
-		private int getWinningLines(LivingLocation move) {
+		private int getWinningLines(LivingLocation move, int cutoff, WorkArea area) {
 
 			//if we can never exceed the cutoff then no point continuing
-			if (Solver.PRUNE_BF_ANALYSIS && this.getSolutionSize() - move.mineCount <= this.winningLines) {
+			if (Solver.PRUNE_BF_ANALYSIS && this.getSolutionSize() - move.mineCount <= cutoff) {
 				move.pruned = true;
 				return (this.getSolutionSize() - move.mineCount);
 			}
 			
-			int winningLines = getWinningLines(1, move, this.winningLines);
-			
-			if (winningLines > this.winningLines) {
-				this.winningLines = winningLines;
-			}
+			// this is the top node, which the moves on other threads share, so the work isn't recorded against it
+			return getWinningLines(1, move, cutoff, area, false);
 			
-			return winningLines;
 		}
 		
 		
@@ -319,7 +318,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		 * Calculate the number of winning lines if this move is played at this position
 		 * Used when exploring the game tree
 		 */
-		private int getWinningLines(int depth, LivingLocation move, int cutoff) {
+		private int getWinningLines(int depth, LivingLocation move, int cutoff, WorkArea area, boolean recordWork) {
 
 			int result = 0;
 
@@ -332,12 +331,22 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 			}
 			
 			// we're going to have to do some work
-			processCount++;
-			if (processCount > maxProcessCount) {
+			long count = processCount.incrementAndGet();
+			if (count > maxProcessCount) {
+				return 0;
+			}
+			
+			// if the solver has been stopped or the deadline has passed then use up the budget, so the analysis is left incomplete
+			if (count % STOP_CHECK_INTERVAL == 0 && (solver.isStopped() || System.currentTimeMillis() > deadline)) {
+				solver.logger.log(Level.INFO, "BFDA stopped after %d nodes", count);
+				synchronized (BruteForceAnalysis.this) {
+					maxProcessCount = 0;
+					processCountExtension = 0;
+				}
 				return 0;
 			}
 			
-			move.buildChildNodes(this);   
+			move.buildChildNodes(this, area);   
 			
 			for (Node child: move.children) {
 
@@ -346,55 +355,41 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 				}
 				
 				if (child.fromCache) {  // nothing more to do, since we did it before
-					this.work++;
+					if (recordWork) {
+						this.work++;
+					}
 				} else {
 					
-					child.determineLivingLocations(this.livingLocations, move.index);
-					this.work++;
+					child.determineLivingLocations(this.livingLocations, move.index, area);
+					if (recordWork) {
+						this.work++;
+					}
 									
 					if (child.getLivingLocations().isEmpty()) {  // no further information ==> all solution indistinguishable ==> 1 winning line
 
 						child.winningLines = 1;
 							
-					} else {  // not cached and not terminal node, so we need to do the recursion
+					} else if (depth >= depthLimit) {  // the anytime analysis hasn't gone this deep yet, so there is at least 1 winning line
 						
-						for (LivingLocation childMove: child.getLivingLocations()) {
-							
-							// if the number of safe solutions <= the best winning lines then we can't do any better, so skip the rest
-							if (child.getSolutionSize() - childMove.mineCount <= child.winningLines) {
-								break;
-							}
-							
-							// now calculate the winning lines for each of these children
-							int winningLines = child.getWinningLines(depth + 1, childMove, child.winningLines);
-							if (!childMove.pruned) {
-								if (child.winningLines < winningLines || (child.bestLiving != null && child.winningLines == winningLines && child.bestLiving.mineCount < childMove.mineCount)) {
-									child.winningLines = winningLines;
-									child.bestLiving = childMove;
-								}
-							}
-							
-							// if there are no mines then this is a 100% safe move, so skip any further analysis since it can't be any better
-							if (childMove.mineCount == 0) {
-								break;
-						 	}
-							
-						}
-
-						// no need to hold onto the living location once we have determined the best of them
+						child.winningLines = 1;
 						child.livingLocations = null;
+						child.cutOff = true;
+						truncated = true;
+						
+					} else {  // not cached and not terminal node, so we need to do the recursion
+						
+						child.findBestMove(depth, area);
 
 						//if (depth > solver.preferences.BRUTE_FORCE_ANALYSIS_TREE_DEPTH) {  // stop holding the tree beyond this depth
 						//	child.bestLiving = null;
 						//}
 						
-						// add the child to the cache if it didn't come from there and it is carrying sufficient winning lines
-						if (child.work > 30) {
+						// add the child to the cache if it didn't come from there and it is carrying sufficient winning lines, which are exact if the depth isn't limited
+						if (child.work > 30 && depthLimit == Integer.MAX_VALUE) {
+							cache.put(child.position.key, child.winningLines, child.work);
 							child.work = 0;
-							child.fromCache = true;
-							cacheSize++;
-							cache.put(child.position, child);
-						} else {
+							cacheSize.incrementAndGet();
+						} else if (recordWork) {
 							this.work = this.work + child.work;
 						}
 
@@ -424,11 +419,44 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 			
 		}
 		
+		/**
+		 * Find the best move from this position by calculating the winning lines of its living locations
+		 */
+		private void findBestMove(int depth, WorkArea area) {
+			
+			for (LivingLocation move: livingLocations) {
+				
+				// if the number of safe solutions <= the best winning lines then we can't do any better, so skip the rest
+				if (this.getSolutionSize() - move.mineCount <= this.winningLines) {
+					break;
+				}
+				
+				// now calculate the winning lines for each of these children
+				int winningLines = getWinningLines(depth + 1, move, this.winningLines, area, true);
+				if (!move.pruned) {
+					if (this.winningLines < winningLines || (this.bestLiving != null && this.winningLines == winningLines && this.bestLiving.mineCount < move.mineCount)) {
+						this.winningLines = winningLines;
+						this.bestLiving = move;
+					}
+				}
+				
+				// if there are no mines then this is a 100% safe move, so skip any further analysis since it can't be any better
+				if (move.mineCount == 0) {
+					break;
+			 	}
+				
+			}
+
+			// no need to hold onto the living location once we have determined the best of them
+			this.livingLocations = null;
+			
+		}
+		
 		/**
 		 * this generates a list of Location that are still alive, (i.e. have more than one possible value) from a list of previously living locations
 		 * Index is the move which has just been played (in terms of the off-set to the position[] array)
 		 */
-		private void determineLivingLocations(List<LivingLocation> liveLocs, int index) {
+		private void determineLivingLocations(List<LivingLocation> liveLocs, int index, WorkArea area) {
 			
 			List<LivingLocation> living = new ArrayList<>(liveLocs.size());
 			
@@ -439,8 +467,9 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 				}
 				
 				int value;
+				byte[] column = allSolutions.column(live.index);
 				
-				int valueCount[] = resetValues(0);
+				int valueCount[] = area.resetValues();
 				int mines = 0;
 				int maxSolutions = 0;
 				byte count = 0;
@@ -448,7 +477,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 				byte maxValue = 0;
 				
 				for (int j=startLocation; j < endLocation; j++) {
-					value = allSolutions.get(j)[live.index];
+					value = column[area.order[j]];
 					if (value != GameStateModel.MINE) {
 						//values[value] = true;
 						valueCount[value]++;
@@ -543,13 +572,158 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		
 	}
 	
+	/**
+	 * The order of the solutions being analysed and some work areas to prevent having to instantiate many 1000's of copies of them.
+	 * The nodes refer to ranges in this order, which is partitioned by value as the tree is explored.
+	 */
+	private class WorkArea {
+		
+		private final int[] order;       // the solutions in the table in their current order
+		private final int[] partition;
+		private final int[] valueCount = new int[9];
+		private final int[] bucketStart = new int[10];
+		
+		private WorkArea(int[] order) {
+			this.order = order;
+			this.partition = new int[order.length];
+		}
+		
+		// the value of the location in the solution at this place in the order
+		private byte value(int place, int location) {
+			return allSolutions.value(location, order[place]);
+		}
+		
+		/**
+		 * Reorder the solutions in the range so those with a mine at the location come first followed by each value in ascending order.
+		 * This is a counting partition, so the solutions with the same value stay in the same order.
+		 */
+		private void partition(int start, int end, int location) {
+			
+			byte[] column = allSolutions.column(location);
+			
+			for (int i=0; i < bucketStart.length; i++) {
+				bucketStart[i] = 0;
+			}
+			for (int i=start; i < end; i++) {
+				bucketStart[bucket(column[order[i]])]++;
+			}
+			
+			// convert the counts into where each value starts
+			int next = start;
+			for (int i=0; i < bucketStart.length; i++) {
+				int count = bucketStart[i];
+				bucketStart[i] = next;
+				next = next + count;
+			}
+			
+			for (int i=start; i < end; i++) {
+				partition[bucketStart[bucket(column[order[i]])]++] = order[i];
+			}
+			System.arraycopy(partition, start, order, start, end - start);
+			
+		}
+		
+		// mines go in the first bucket followed by the values 0-8
+		private int bucket(byte value) {
+			if (value == GameStateModel.MINE) {
+				return 0;
+			} else {
+				return value + 1;
+			}
+		}
+		
+		private int[] resetValues() {
+			for (int i=0; i < valueCount.length; i++) {
+				valueCount[i] = 0;
+			}
+			return valueCount;
+		}
+		
+	}
+	
+	/**
+	 * The analysis of one move at the top of the tree.  Each move has its own order of the solutions, since analysing a move
+	 * partitions them, so the moves can be analysed on different threads while sharing the cache.
+	 */
+	private class MoveAnalysis extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Node top;
+		private final LivingLocation move;
+		private final AtomicInteger best;
+		private final boolean inOrder;   // true if the moves are analysed one after another
+		private final WorkArea area;
+		
+		private int cutoff;
+		private int winningLines;
+		private boolean inBudget;     // true if the node budget wasn't used up when this move finished
+		
+		private MoveAnalysis(Node top, LivingLocation move, AtomicInteger best, boolean inOrder) {
+			this.top = top;
+			this.move = move;
+			this.best = best;
+			this.inOrder = inOrder;
+			int[] order = new int[allSolutions.size()];
+			for (int i=0; i < order.length; i++) {
+				order[i] = i;
+			}
+			this.area = new WorkArea(order);
+		}
+		
+		@Override
+		protected void compute() {
+			
+			// the best winning lines found so far by the other moves. When the moves aren't analysed in order a move 
+			// which equals the best is still needed, since the best could have come from a move later in the order
+			if (inOrder) {
+				cutoff = best.get();
+			} else {
+				cutoff = best.get() - 1;
+			}
+			
+			winningLines = top.getWinningLines(move, cutoff, area);  // calculate the number of winning lines if this move is played
+			
+			if (!move.pruned) {
+				best.accumulateAndGet(winningLines, Math::max);
+			}
+			
+			synchronized (BruteForceAnalysis.this) {
+				if (processCount.get() < maxProcessCount) {
+					inBudget = true;
+					movesProcessed++;
+					
+					// if we've got to half way then allow extra cycles to finish up
+					if (processCountExtension !=0 && movesProcessed * 2 > movesToProcess) {
+						maxProcessCount = maxProcessCount + processCountExtension;
+						processCountExtension = 0;
+						solver.logger.log(Level.INFO, "Extending BFDA cycles to %d after %d of %d moves analysed", maxProcessCount, movesProcessed, movesToProcess);
+					}
+				}
+			}
+			
+		}
+		
+	}
+	
 	
 	private static final String INDENT = "................................................................................";
 	
 	private static final BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
 	
-	private long processCount = 0;
-	private long maxProcessCount;
+	// the solution table starts with room for this many solutions and grows when needed
+	private static final int INITIAL_SOLUTIONS = 1024;
+	
+	// how many nodes are processed between looking to see if the analysis should stop
+	private static final int STOP_CHECK_INTERVAL = 1024;
+	
+	// the cache holds a position for every CACHE_NODES nodes in the budget, within these limits
+	private static final int CACHE_NODES = 16;
+	private static final int MIN_CACHE_ENTRIES = 1 << 12;
+	private static final int MAX_CACHE_ENTRIES = 1 << 22;
+	
+	private final AtomicLong processCount = new AtomicLong();   // the node budget is shared by all the moves being analysed
+	private volatile long maxProcessCount;
 	private long processCountExtension;
 	
 	private int movesProcessed = 0;
@@ -563,28 +737,42 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 	private final List<? extends Location> locations;         // the positions being analysed
 	private final List<? extends Location> startLocations;    // the positions which will be considered for the first move
 	
-	private final List<ProcessedMove> processedMoves = new ArrayList<>();    // moves which have been processed
+	private List<ProcessedMove> processedMoves = new ArrayList<>();    // moves which have been processed
 	
 	private final SolutionTable allSolutions;
 	
+	// the solutions are collected by each thread without locking and then merged into the table before they are analysed
+	private final AtomicInteger claimed = new AtomicInteger();
+	private final Queue<List<byte[]>> buffers = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<List<byte[]>> buffer = new ThreadLocal<List<byte[]>>() {
+		@Override
+		protected List<byte[]> initialValue() {
+			List<byte[]> solutions = new ArrayList<>();
+			buffers.add(solutions);
+			return solutions;
+		}
+	};
+	
 	private final String scope;
 	
 	private Node currentNode;
 	private Location expectedMove;
 	
-	private final SortSolutions[] sorters;
 	
-	private int cacheHit = 0;
-	private int cacheSize = 0;
-	private int cacheWinningLines = 0;
+	private final AtomicInteger cacheHit = new AtomicInteger();
+	private final AtomicInteger cacheSize = new AtomicInteger();
+	private final AtomicInteger cacheWinningLines = new AtomicInteger();
 	private boolean allDead = false;   // this is true if all the locations are dead
 	private Area deadLocations = Area.EMPTY_AREA;
 	
-	// some work areas to prevent having to instantiate many 1000's of copies of them 
-	//private final boolean[] values = new boolean[9];
-	private final int[][] valueCount = new int[2][9];
+	// the winning lines of the positions already analysed, shared by the moves being analysed on different threads
+	private TranspositionTable cache;
+	private final int keyWords;   // the number of longs needed to hold a position
 	
-	private Map<Position, Node> cache = new HashMap<>(5000);
+	// the anytime analysis limits the depth of each pass and stops at the deadline
+	private volatile int depthLimit = Integer.MAX_VALUE;
+	private volatile boolean truncated;    // true if a position was cut off by the depth limit during the pass
+	private long deadline = Long.MAX_VALUE;
 	
 	public BruteForceAnalysis(Solver solver, List<? extends Location> locations, int size, String scope, List<Location> startLocations) {
 		
@@ -592,12 +780,9 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		this.locations = locations;
 		this.maxSolutionSize = size;
 		this.scope = scope;
-		this.allSolutions = new SolutionTable(size);
+		this.allSolutions = new SolutionTable(locations.size(), size);
+		this.keyWords = (locations.size() + 15) / 16;
 		//this.top = new Node();
-		this.sorters = new SortSolutions[locations.size()];
-		for (int i=0; i < sorters.length; i++) {
-			this.sorters[i] = new SortSolutions(i);
-		}
 		
 		this.startLocations = startLocations;
 
@@ -605,17 +790,20 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 	
 	// this can be called by different threads when brute force is running on multiple threads
 	@Override
-	protected synchronized void addSolution(byte[] solution) {
+	protected void addSolution(byte[] solution) {
 		
 		if (solution.length != locations.size()) {
 			throw new RuntimeException("Solution does not have the correct number of locations");
 		}
 		
-		if (allSolutions.size() >= maxSolutionSize) {
-			if (!tooMany) {
-				solver.logger.log(Level.WARN, "BruteForceAnalysis solution table overflow after %d solutions found (%s)", allSolutions.size(), this.scope);
+		// each solution claims a place in the table, so exactly maxSolutionSize solutions are kept
+		if (claimed.getAndIncrement() >= maxSolutionSize) {
+			synchronized (this) {
+				if (!tooMany) {
+					solver.logger.log(Level.WARN, "BruteForceAnalysis solution table overflow after %d solutions found (%s)", maxSolutionSize, this.scope);
+				}
+				tooMany = true;
 			}
-			tooMany = true;
 			return;
 		}
 		
@@ -627,7 +815,19 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		solver.display(text);
 		*/
 		
-		allSolutions.addSolution(solution);
+		buffer.get().add(solution);
+		
+	}
+	
+	// move the solutions found by each thread into the solution table
+	private synchronized void mergeSolutions() {
+		
+		for (List<byte[]> solutions: buffers) {
+			for (byte[] solution: solutions) {
+				allSolutions.addSolution(solution);
+			}
+			solutions.clear();
+		}
 		
 	}
 
@@ -636,9 +836,114 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 
 		long start = System.currentTimeMillis();
 		
+		mergeSolutions();
+		
 		solver.logger.log(Level.INFO, "----- Brute Force Deep Analysis starting ----");
 		solver.logger.log(Level.INFO, "%d solutions in BruteForceAnalysis", allSolutions.size());
 		
+		this.maxProcessCount = solver.preferences.getBruteForceMaxNodes();
+		
+		if (startLocations == null || startLocations.size() == 0) {
+			this.processCountExtension = this.maxProcessCount / 2;
+		} else {
+			this.processCountExtension = 0;
+		}
+		
+		long entries = (this.maxProcessCount + this.processCountExtension) / CACHE_NODES;
+		this.cache = new TranspositionTable(keyWords, (int) Math.max(MIN_CACHE_ENTRIES, Math.min(MAX_CACHE_ENTRIES, entries)));
+		
+		Node top;
+		if (solver.preferences.getBruteForceTimeLimit() > 0) {
+			top = processAnytime(start + solver.preferences.getBruteForceTimeLimit());
+		} else {
+			List<ProcessedMove> moves = new ArrayList<>();
+			top = analyse(moves);
+			processedMoves = moves;
+			if (processCount.get() < this.maxProcessCount) {
+				this.completed = true;
+			}
+		}
+		
+		currentNode = top;
+		
+		if (this.completed) {
+			if (solver.isShowProbabilityTree()) {
+				solver.newLine("--------- Probability Tree dump start ---------");
+				showTree(0, 0, top);
+				solver.newLine("---------- Probability Tree dump end ----------");
+			}
+		}
+		
+		
+		long end = System.currentTimeMillis();
+		solver.logger.log(Level.INFO, "Total nodes in cache %d, total cache hits %d, total winning lines saved %d", cacheSize.get(), cacheHit.get(), cacheWinningLines.get());
+		solver.logger.log(Level.INFO, "process took %d milliseconds and explored %d nodes", (end - start), processCount.get());
+		solver.logger.log(Level.INFO, "----- Brute Force Deep Analysis finished ----");
+	}
+	
+	/**
+	 * Deepen the tree a level at a time until no position is cut off by the depth limit, the node budget is used up or the deadline passes.
+	 * Each pass which finishes gives a best move whose winning lines are a lower bound, since a position at the depth limit only counts as 
+	 * 1 winning line. The tree from the last pass to finish is kept and the positions cut off are analysed when the game reaches them.
+	 */
+	private Node processAnytime(long deadline) {
+		
+		this.deadline = deadline;
+		
+		Node best = null;
+		for (int depth=1; ; depth++) {
+			
+			// the last pass is as deep as needed
+			if (depth > solver.preferences.getBruteForceTreeDepth()) {
+				depthLimit = Integer.MAX_VALUE;
+			} else {
+				depthLimit = depth;
+			}
+			truncated = false;
+			
+			List<ProcessedMove> moves = new ArrayList<>();
+			Node top = analyse(moves);
+			
+			// this pass didn't finish so use the one before it, if there was one
+			if (processCount.get() >= this.maxProcessCount) {
+				solver.logger.log(Level.INFO, "Anytime BFDA pass to depth %d didn't finish after %d nodes", depth, processCount.get());
+				if (best == null) {
+					best = top;
+					processedMoves = moves;
+				}
+				break;
+			}
+			
+			best = top;
+			processedMoves = moves;
+			this.completed = true;
+			
+			// the winning lines can't be more than the safe solutions of the best first move
+			int upperBound = top.winningLines;
+			for (LivingLocation move: top.getLivingLocations()) {
+				upperBound = Math.max(upperBound, top.getSolutionSize() - move.mineCount);
+			}
+			solver.logger.log(Level.INFO, "Anytime BFDA pass to depth %d has winning lines between %d and %d", depth, top.winningLines, upperBound);
+			
+			// nothing was cut off so the winning lines are exact
+			if (!truncated) {
+				break;
+			}
+			
+		}
+		
+		// positions analysed later aren't limited
+		this.depthLimit = Integer.MAX_VALUE;
+		this.deadline = Long.MAX_VALUE;
+		
+		return best;
+	}
+	
+	/**
+	 * Build the top node and analyse each of its moves, adding the moves analysed within the budget to the list
+	 */
+	private Node analyse(List<ProcessedMove> moves) {
+		
 		// create the top node 
 		Node top = buildTopNode(allSolutions);
 		
@@ -650,16 +955,13 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		}
 		
 		this.movesToProcess = top.getLivingLocations().size();
-		this.maxProcessCount = solver.preferences.getBruteForceMaxNodes();
+		this.movesProcessed = 0;
 		
-		if (startLocations == null || startLocations.size() == 0) {
-			this.processCountExtension = this.maxProcessCount / 2;
-		} else {
-			this.processCountExtension = 0;
-		}
-		
-
+		// the best winning lines found so far is the cutoff for the moves analysed after it
+		AtomicInteger bestSoFar = new AtomicInteger(top.winningLines);
+		boolean inOrder = solver.preferences.isSingleThread() || top.getLivingLocations().size() < 2;
 		
+		List<MoveAnalysis> analyses = new ArrayList<>();
 		for (LivingLocation move: top.getLivingLocations()) {
 			
 			// check that the move is in the startLocation list
@@ -677,7 +979,27 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 				}				
 			}
 
-			int winningLines = top.getWinningLines(move);  // calculate the number of winning lines if this move is played
+			analyses.add(new MoveAnalysis(top, move, bestSoFar, inOrder));
+		}
+		
+		// analyse the moves in order or as separate tasks, in which case a move may not see the best winning lines of the moves before it 
+		if (inOrder) {
+			for (MoveAnalysis analysis: analyses) {
+				analysis.invoke();
+			}
+		} else {
+			ForkJoinTask.invokeAll(analyses);
+		}
+		
+		for (MoveAnalysis analysis: analyses) {
+			
+			LivingLocation move = analysis.move;
+			int winningLines = analysis.winningLines;
+			
+			// this move would have been pruned if it had been analysed after the best move before it
+			if (!move.pruned && !inOrder && winningLines <= best) {
+				move.pruned = true;
+			}
 			
 			if (!move.pruned) {
 				if (best < winningLines || (top.bestLiving != null && best == winningLines && top.bestLiving.mineCount < move.mineCount)) {
@@ -694,46 +1016,19 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 				solver.logger.log(Level.INFO, "%d %s is living with %d possible values and probability %s, winning lines %d", move.index, locations.get(move.index), move.count, percentage(singleProb),  winningLines);
 			}
 			
-			if (processCount < this.maxProcessCount) {
-				movesProcessed++;
-				
+			if (analysis.inBudget) {
 				Location loc = this.locations.get(move.index);
-				processedMoves.add(new ProcessedMove(loc, winningLines, move.pruned));
-				
-				// if we've got to half way then allow extra cycles to finish up
-				if (this.processCountExtension !=0 && this.movesProcessed * 2 > this.movesToProcess) {
-					this.maxProcessCount = this.maxProcessCount + this.processCountExtension;
-					this.processCountExtension = 0;
-					solver.logger.log(Level.INFO, "Extending BFDA cycles to %d after %d of %d moves analysed", this.maxProcessCount, this.movesProcessed, this.movesToProcess);
-				}
+				moves.add(new ProcessedMove(loc, winningLines, move.pruned));
 			}
 			
 		}
 		
 		// sort the processed moves into best move at the top
-		processedMoves.sort(null);  // use the comparable method to sort
+		moves.sort(null);  // use the comparable method to sort
 		
 		top.winningLines = best;
 		
-		currentNode = top;
-		
-		if (processCount < this.maxProcessCount) {
-			this.completed = true;
-			if (solver.isShowProbabilityTree()) {
-				solver.newLine("--------- Probability Tree dump start ---------");
-				showTree(0, 0, top);
-				solver.newLine("---------- Probability Tree dump end ----------");
-			}
-		}
-		
-		
-		// clear down the cache
-		cache.clear();
-		
-		long end = System.currentTimeMillis();
-		solver.logger.log(Level.INFO, "Total nodes in cache %d, total cache hits %d, total winning lines saved %d", cacheSize, cacheHit, this.cacheWinningLines);
-		solver.logger.log(Level.INFO, "process took %d milliseconds and explored %d nodes", (end - start), processCount);
-		solver.logger.log(Level.INFO, "----- Brute Force Deep Analysis finished ----");
+		return top;
 	}
 	
 	/**
@@ -753,7 +1048,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		for (short i=0; i < locations.size(); i++) {
 			int value;
 			
-			int valueCount[] = resetValues(0);
+			int valueCount[] = new int[9];
 			int mines = 0;
 			int maxSolutions = 0;
 			byte count = 0;
@@ -761,8 +1056,8 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 			byte maxValue = 0;
 			
 			for (int j=0; j < result.getSolutionSize(); j++) {
-				if (solutionTable.get(j)[i] != GameStateModel.MINE) {
-					value = solutionTable.get(j)[i];
+				if (solutionTable.value(i, j) != GameStateModel.MINE) {
+					value = solutionTable.value(i, j);
 					//values[value] = true;
 					valueCount[value]++;
 				} else {
@@ -811,26 +1106,41 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		return result;
 	}
 	
-	private int[] resetValues(int thread) {
-		for (int i=0; i < valueCount[thread].length; i++) {
-			valueCount[thread][i] = 0;
-		}
-		return valueCount[thread];
-	}
-	
 	@Override
 	protected int getSolutionCount() {
+		mergeSolutions();
 		return allSolutions.size();
 	}
 	
 	@Override
 	protected long getNodeCount() {
-		return processCount;
+		return processCount.get();
 	}
 	
 	@Override
 	protected Action getNextMove(BoardState boardState) {
 		
+		// follow the tree down through the moves which have been played
+		while (isBehind(currentNode, boardState)) {
+			
+			LivingLocation played = currentNode.bestLiving;
+			Node child = null;
+			if (!currentNode.fromCache && played != null && boardState.isRevealed(locations.get(played.index))) {
+				child = played.children[boardState.getWitnessValue(locations.get(played.index))];
+			}
+			
+			// the board has gone off the tree, e.g. a zero has revealed other tiles, so analyse the position the board is in
+			if (child == null) {
+				currentNode = rerootNode(boardState);
+				if (currentNode == null) {
+					return null;
+				}
+				break;
+			}
+			
+			currentNode = child;
+		}
+		
 		LivingLocation bestLiving = getBestLocation(currentNode);
 		
 		if (bestLiving == null) {
@@ -842,20 +1152,6 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		//solver.display("first best move is " + loc.display());
 		BigDecimal prob = BigDecimal.ONE.subtract(BigDecimal.valueOf(bestLiving.mineCount).divide(BigDecimal.valueOf(currentNode.getSolutionSize()), Solver.DP, RoundingMode.HALF_UP));
 		
-		while (boardState.isRevealed(loc)) {
-			int value = boardState.getWitnessValue(loc);
-			
-			currentNode = bestLiving.children[value];
-			bestLiving = getBestLocation(currentNode);
-			if (bestLiving == null) {
-				return null;
-			}
-			prob = BigDecimal.ONE.subtract(BigDecimal.valueOf(bestLiving.mineCount).divide(BigDecimal.valueOf(currentNode.getSolutionSize()), Solver.DP, RoundingMode.HALF_UP));
-
-			loc = this.locations.get(bestLiving.index);
-			
-		}
-		
 		solver.logger.log(Level.INFO, "Solutions with mines is %d out of %d", bestLiving.mineCount, currentNode.getSolutionSize());
 		for (int i=0; i < bestLiving.children.length; i++) {
 			if (bestLiving.children[i] == null) {
@@ -881,12 +1177,90 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		
 	}
 	
+	// true if the board has revealed locations which are not known in the node's position
+	private boolean isBehind(Node node, BoardState boardState) {
+		
+		for (int i=0; i < locations.size(); i++) {
+			if (node.position.getValue(i) == 15 && boardState.isRevealed(locations.get(i))) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
 	private LivingLocation getBestLocation(Node node) {
 		
+		// a position from the cache or cut off by the anytime analysis has no tree, so analyse it again to build the tree below it
+		if ((node.fromCache || node.cutOff) && node.bestLiving == null) {
+			solver.logger.log(Level.INFO, "Rebuilding the tree below a position with %d solutions", node.getSolutionSize());
+			expandNode(node);
+		}
+		
 		return node.bestLiving;
 		
 	}
 	
+	/**
+	 * Start a new tree at the position the board is in.  The solutions are the ones still possible and the cache
+	 * still holds the winning lines of the positions analysed so far.  Returns null if the position can't be analysed.
+	 */
+	private Node rerootNode(BoardState boardState) {
+		
+		Node node = new Node(new Position(boardState));
+		
+		if (!expandNode(node)) {
+			solver.logger.log(Level.INFO, "Unable to re-root the Brute Force Deep Analysis at the board position");
+			return null;
+		}
+		
+		solver.logger.log(Level.INFO, "Brute Force Deep Analysis re-rooted at a position with %d solutions, winning lines %d", node.getSolutionSize(), node.winningLines);
+		
+		return node;
+	}
+	
+	// returns true if the position has solutions and the analysis completed within the budget
+	private boolean expandNode(Node node) {
+		
+		// find the solutions which are still possible in this position
+		int[] order = new int[allSolutions.size()];
+		int size = 0;
+		for (int i=0; i < allSolutions.size(); i++) {
+			if (node.position.matches(i)) {
+				order[size++] = i;
+			}
+		}
+		
+		if (size == 0) {
+			return false;
+		}
+		
+		List<LivingLocation> everything = new ArrayList<>(locations.size());
+		for (short i=0; i < locations.size(); i++) {
+			LivingLocation live = new LivingLocation(i);
+			live.minValue = 0;
+			live.maxValue = 8;
+			everything.add(live);
+		}
+		
+		WorkArea area = new WorkArea(Arrays.copyOf(order, size));
+		
+		node.startLocation = 0;
+		node.endLocation = size;
+		node.winningLines = 0;
+		node.fromCache = false;
+		node.cutOff = false;
+		node.determineLivingLocations(everything, -1, area);
+
+		// the position was analysed within the budget before, so give it a new budget
+		maxProcessCount = processCount.get() + solver.preferences.getBruteForceMaxNodes();
+		
+		node.findBestMove(0, area);
+		
+		return processCount.get() < maxProcessCount;
+		
+	}
+	
 	
 	private void showTree(int depth, int value, Node node) {
 		
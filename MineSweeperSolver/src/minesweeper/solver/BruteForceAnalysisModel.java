@@ -10,7 +10,7 @@ import minesweeper.structure.Location;
 abstract public class BruteForceAnalysisModel {
 
 	protected boolean completed = false;
-	protected boolean tooMany = false;
+	protected volatile boolean tooMany = false;
 
 	abstract protected void addSolution(byte[] solution);
 
@@ -20,6 +20,9 @@ import java.util.List;
  */
 public class Cruncher implements Asynchronous<CrunchResult> {
 
+    // how many samples are checked between looking to see if the crunch should stop
+    private final static int STOP_CHECK_INTERVAL = 4096;
+    
     private final BoardState boardState;
     private final Iterator iterator;
     private final List<Location> square;
@@ -30,8 +33,13 @@ public class Cruncher implements Asynchronous<CrunchResult> {
     private final boolean[] workRestNotFlags;
     private final boolean[] workRestNotClear;
     
+    private SampleMasks sampleMasks;
+    
     private CrunchResult result;
     
+    private volatile boolean stopRequested = false;
+    private boolean stopped = false;
+    
    
     public Cruncher(BoardState boardState, List<Location> square, List<? extends Location> witness, Iterator iterator, boolean calculateDistribution, BruteForceAnalysisModel bfa) {
         
@@ -59,7 +67,14 @@ public class Cruncher implements Asynchronous<CrunchResult> {
 
     @Override
     public void requestStop() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        stopRequested = true;
+    }
+
+    /**
+     * True if the crunch stopped before every sample was checked, so the result is incomplete 
+     */
+    public boolean isStopped() {
+        return stopped;
     }
 
 
@@ -103,6 +118,9 @@ public class Cruncher implements Asynchronous<CrunchResult> {
             //display("Witness " + i + " location " + d.location.display() + " current flags = " + d.currentFlags + " good witness = " + d.witnessGood + " Satisified = " + d.alwaysSatisfied);
             witnessData[i] = d;
         }
+        
+        // build the bit masks used to check each sample
+        sampleMasks = new SampleMasks(boardState, square, witnessData);
  
         /*
         for (int i=0; i < square.length; i++) {
@@ -114,9 +132,16 @@ public class Cruncher implements Asynchronous<CrunchResult> {
 
         int[] tally = new int[square.size()];
         int candidates = 0;
+        int checked = 0;
         
         while (sample != null) {
            
+            // stop if asked to or the solver has run out of time
+            if (++checked % STOP_CHECK_INTERVAL == 0 && (stopRequested || boardState.getSolver().isStopped())) {
+                stopped = true;
+                break;
+            }
+            
             if (checkSample(sample, square, witnessData, bigDistribution, bfa)) {
                 for (int i=0; i < sample.length; i++) {
                 	tally[sample[i]]++;
@@ -183,26 +208,18 @@ public class Cruncher implements Asynchronous<CrunchResult> {
     		workRestNotClear[i] = false;
     	}
         
-        // get the location of the mines
-        Location[] mine = new Location[sample.length];
-        for (int i=0; i < sample.length; i++) {
-            mine[i] = square.get(sample[i]);
-        }
+        // load the mines into the bit masks
+        sampleMasks.setSample(sample);
         
         for (int i=0; i < witnessData.length; i++) {
             
             if (!witnessData[i].alwaysSatisfied) {
                 int flags1 = witnessData[i].currentFlags;
-                int flags2 = 0;
 
                 // count how many candidate mines are next to this witness
-                for (int j = 0; j < mine.length; j++) {
-                    if (mine[j].isAdjacent(witnessData[i].location)) {
-                        flags2++;
-                    }
-                }
+                int flags2 = sampleMasks.countMines(witnessData[i].mask);
 
-                int flags3 = boardState.getWitnessValue(witnessData[i].location);
+                int flags3 = witnessData[i].value;
                 //int flags3 = board[witnessData[i].location.x][witnessData[i].location.y];
 
                 // if the candidate solution puts more flags around the witness
@@ -255,23 +272,10 @@ public class Cruncher implements Asynchronous<CrunchResult> {
         	
             for (int i=0; i < square.size(); i++) {
                 
-                boolean isMine = false;
-                for (int j=0; j < sample.length; j++) {
-                    if (i == sample[j]) {
-                        isMine = true;
-                        break;
-                    }
-                }
-                
                 // if we are a mine then it doesn't matter how many mines surround us
-                if (!isMine) {
-                    byte flags2 = (byte) boardState.countAdjacentConfirmedFlags(square.get(i));
-                    // count how many candidate mines are next to this square
-                    for (Location mine1 : mine) {
-                        if (mine1.isAdjacent(square.get(i))) {
-                            flags2++;
-                        }
-                    }            
+                if (!sampleMasks.isMine(i)) {
+                    // count how many confirmed and candidate mines are next to this square
+                    byte flags2 = (byte) sampleMasks.countAdjacentMines(i);
                     solution[i] = flags2;
                     if (bigDistribution != null) {
                     	bigDistribution[i][flags2] = bigDistribution[i][flags2].add(BigInteger.ONE);
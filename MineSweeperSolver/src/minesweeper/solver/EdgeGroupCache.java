@@ -0,0 +1,120 @@
+package minesweeper.solver;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import minesweeper.structure.Location;
+
+/**
+ * Holds the processed result of each independent group of witnesses the probability engine has seen.
+ * A group which hasn't changed since an earlier move can use the stored result rather than being processed again.
+ */
+public class EdgeGroupCache {
+
+	// marks a dead candidate which was found to be alive
+	protected final static int ALIVE = -1;
+
+	// a fingerprint of an independent group: its witnesses, their values and the boxes they cover
+	protected static class Key implements Comparable<Key> {
+
+		private final int[] data;
+		private final int hash;
+
+		protected Key(int[] data) {
+			this.data = data;
+			this.hash = Arrays.hashCode(data);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && Arrays.equals(data, other.data);
+		}
+
+		@Override
+		public int compareTo(Key o) {
+			if (data.length != o.data.length) {
+				return data.length - o.data.length;
+			}
+			for (int i=0; i < data.length; i++) {
+				if (data[i] != o.data[i]) {
+					return data[i] < o.data[i] ? -1 : 1;
+				}
+			}
+			return 0;
+		}
+
+	}
+
+	// the mine count distribution and box tallies of a processed group. The box tallies are held in the order the boxes appear in the key.
+	protected static class Result {
+
+		protected final int[] mineCount;
+		protected final long[] solutionCount;
+		protected final long[][] mineBoxCount;
+		protected final Map<Location, Integer> candidates;  // the dead candidates checked, with the number of mines in their good boxes if dead or ALIVE
+
+		protected Result(int[] mineCount, long[] solutionCount, long[][] mineBoxCount, Map<Location, Integer> candidates) {
+			this.mineCount = mineCount;
+			this.solutionCount = solutionCount;
+			this.mineBoxCount = mineBoxCount;
+			this.candidates = candidates;
+		}
+
+	}
+
+	private final String name;
+	private final Map<Key, Result> cache;
+
+	private int cacheHits = 0;
+	private int cacheMisses = 0;
+
+	public EdgeGroupCache(String name, final int cacheSize) {
+
+		this.name = name;
+
+		// least recently used groups are removed once the cache is full
+		this.cache = new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+				return size() > cacheSize;
+			}
+		};
+
+	}
+
+	protected synchronized Result get(Key key) {
+
+		Result result = cache.get(key);
+		if (result == null) {
+			cacheMisses++;
+		} else {
+			cacheHits++;
+		}
+
+		return result;
+	}
+
+	protected synchronized void put(Key key, Result result) {
+		cache.put(key, result);
+	}
+
+	public synchronized void showStats() {
+		System.out.println(Thread.currentThread().getName() + " " + name + " cache hits: " + cacheHits + ", misses: " + cacheMisses + ", current entries: " + cache.size());
+	}
+
+}
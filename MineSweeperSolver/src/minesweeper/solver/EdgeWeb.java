@@ -0,0 +1,398 @@
+package minesweeper.solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import minesweeper.structure.Area;
+import minesweeper.structure.Location;
+
+/**
+ * The edge of the board, kept up to date as tiles are revealed and mines are found rather than built again every turn.
+ * It holds the un-revealed squares next to each living witness, the living witnesses next to each square, the box each square
+ * belongs to and the connected groups of witnesses. The groups are held in a union-find, which can't split, so a group which
+ * loses a square or a witness is taken apart and joined up again from the squares its witnesses still share.
+ *
+ * The board state tells the web which tiles have changed and the changes are applied when update() is called.
+ */
+public class EdgeWeb {
+
+	private final BoardState boardState;
+	private final int height;
+	private final int size;
+
+	// the un-revealed squares next to each living witness, in the order the adjacent squares are visited, or null if it isn't a living witness
+	private final List<List<Location>> witnessSquares;
+
+	// the living witnesses next to each square
+	private final List<List<Location>> squareWitnesses;
+
+	// the box each square is in, or -1. Squares are in the same box when they have the same witnesses.
+	private final int[] squareBox;
+	private final Map<List<Integer>, Integer> boxIds = new HashMap<>();
+	private final List<List<Integer>> boxKeys = new ArrayList<>();
+	private final List<Integer> boxSquares = new ArrayList<>();
+	private final Deque<Integer> freeBoxIds = new ArrayDeque<>();
+
+	// union-find over the living witnesses, parent is -1 when the location isn't a living witness
+	private final int[] parent;
+	private final int[] groupSize;
+	private final List<List<Location>> members;   // the witnesses in each group, held against the root of the group
+	private int witnessCount = 0;
+
+	// the tiles which have changed since the last update
+	private final boolean[] changed;
+	private final List<Location> changes = new ArrayList<>();
+	private boolean rebuild = true;
+
+	public EdgeWeb(BoardState boardState) {
+
+		this.boardState = boardState;
+		this.height = boardState.getGameHeight();
+		this.size = boardState.getGameWidth() * height;
+
+		this.witnessSquares = new ArrayList<>(Collections.nCopies(size, (List<Location>) null));
+		this.squareWitnesses = new ArrayList<>(size);
+		this.members = new ArrayList<>(Collections.nCopies(size, (List<Location>) null));
+		for (int i=0; i < size; i++) {
+			squareWitnesses.add(new ArrayList<Location>(4));
+		}
+
+		this.squareBox = new int[size];
+		this.parent = new int[size];
+		this.groupSize = new int[size];
+		this.changed = new boolean[size];
+
+	}
+
+	/**
+	 * The tile has been revealed, or a mine found or lost there, so it and the witnesses around it need looking at again
+	 */
+	protected void tileChanged(Location l) {
+
+		int i = index(l);
+		if (!changed[i]) {
+			changed[i] = true;
+			changes.add(l);
+		}
+
+	}
+
+	/**
+	 * The board has been scanned again from scratch, so the web will be built again from scratch
+	 */
+	protected void rebuild() {
+		rebuild = true;
+	}
+
+	/**
+	 * Bring the web up to date with the board state.  This should be done after the board state has been processed.
+	 */
+	public void update() {
+
+		if (rebuild) {
+			rebuildAll();
+			return;
+		}
+
+		if (changes.isEmpty()) {
+			return;
+		}
+
+		// the witnesses which may have changed are the changed tiles and those next to them
+		Set<Location> candidates = new HashSet<>();
+		List<Location> toCheck = new ArrayList<>();
+		for (Location l: changes) {
+			changed[index(l)] = false;
+			if (candidates.add(l)) {
+				toCheck.add(l);
+			}
+			for (Location a: boardState.getAdjacentSquaresIterable(l)) {
+				if (candidates.add(a)) {
+					toCheck.add(a);
+				}
+			}
+		}
+		changes.clear();
+
+		Set<Integer> brokenGroups = new HashSet<>();
+		List<Location> rejoin = new ArrayList<>();
+		Set<Location> touchedSquares = new HashSet<>();
+
+		for (Location w: toCheck) {
+
+			int i = index(w);
+			List<Location> before = witnessSquares.get(i);
+			List<Location> after = boardState.isLivingWitness(w) ? boardState.getAdjacentUnrevealedSquares(w) : null;
+
+			if (before == null && after == null || before != null && before.equals(after)) {
+				continue;
+			}
+
+			// if the witness has lost a square then its group may have split
+			if (before != null) {
+				if (after == null || !after.containsAll(before)) {
+					brokenGroups.add(find(i));
+				}
+				for (Location s: before) {
+					squareWitnesses.get(index(s)).remove(w);
+					touchedSquares.add(s);
+				}
+			}
+
+			witnessSquares.set(i, after);
+			if (before == null) {
+				witnessCount++;
+			} else if (after == null) {
+				witnessCount--;
+			}
+
+			if (after != null) {
+				for (Location s: after) {
+					squareWitnesses.get(index(s)).add(w);
+					touchedSquares.add(s);
+				}
+				if (before == null) {
+					parent[i] = i;
+					groupSize[i] = 1;
+					members.set(i, newMembers(w));
+				}
+				rejoin.add(w);
+			}
+
+		}
+
+		// take the broken groups apart, their witnesses which are still living join up again below
+		for (int root: brokenGroups) {
+			for (Location m: members.get(root)) {
+				int i = index(m);
+				if (witnessSquares.get(i) == null) {
+					parent[i] = -1;
+					groupSize[i] = 0;
+					members.set(i, null);
+				} else {
+					parent[i] = i;
+					groupSize[i] = 1;
+					members.set(i, newMembers(m));
+					rejoin.add(m);
+				}
+			}
+		}
+
+		for (Location w: rejoin) {
+			join(w);
+		}
+
+		for (Location s: touchedSquares) {
+			placeInBox(s);
+		}
+
+	}
+
+	// build everything from the living witnesses
+	private void rebuildAll() {
+
+		for (int i=0; i < size; i++) {
+			witnessSquares.set(i, null);
+			squareWitnesses.get(i).clear();
+			members.set(i, null);
+			parent[i] = -1;
+			groupSize[i] = 0;
+			squareBox[i] = -1;
+			changed[i] = false;
+		}
+		changes.clear();
+		boxIds.clear();
+		boxKeys.clear();
+		boxSquares.clear();
+		freeBoxIds.clear();
+
+		List<Location> witnesses = boardState.getAllLivingWitnesses();
+		Set<Location> squares = new HashSet<>();
+		witnessCount = witnesses.size();
+
+		for (Location w: witnesses) {
+			int i = index(w);
+			List<Location> adj = boardState.getAdjacentUnrevealedSquares(w);
+			witnessSquares.set(i, adj);
+			for (Location s: adj) {
+				squareWitnesses.get(index(s)).add(w);
+				squares.add(s);
+			}
+			parent[i] = i;
+			groupSize[i] = 1;
+			members.set(i, newMembers(w));
+		}
+
+		for (Location w: witnesses) {
+			join(w);
+		}
+
+		for (Location s: squares) {
+			placeInBox(s);
+		}
+
+		rebuild = false;
+
+	}
+
+	// join the witness to the group of every witness it shares a square with
+	private void join(Location w) {
+
+		int i = index(w);
+		for (Location s: witnessSquares.get(i)) {
+			for (Location other: squareWitnesses.get(index(s))) {
+				union(i, index(other));
+			}
+		}
+
+	}
+
+	private int find(int i) {
+
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];   // halve the path as we go
+			i = parent[i];
+		}
+		return i;
+
+	}
+
+	// merge the smaller group into the larger
+	private void union(int a, int b) {
+
+		int rootA = find(a);
+		int rootB = find(b);
+
+		if (rootA == rootB) {
+			return;
+		}
+
+		if (groupSize[rootA] < groupSize[rootB]) {
+			int temp = rootA;
+			rootA = rootB;
+			rootB = temp;
+		}
+
+		parent[rootB] = rootA;
+		groupSize[rootA] = groupSize[rootA] + groupSize[rootB];
+		members.get(rootA).addAll(members.get(rootB));
+		members.set(rootB, null);
+
+	}
+
+	// put the square in the box for its witnesses, creating the box if it is the first square with those witnesses
+	private void placeInBox(Location s) {
+
+		int i = index(s);
+
+		if (squareBox[i] != -1) {
+			int box = squareBox[i];
+			int left = boxSquares.get(box) - 1;
+			boxSquares.set(box, left);
+			if (left == 0) {
+				boxIds.remove(boxKeys.get(box));
+				boxKeys.set(box, null);
+				freeBoxIds.add(box);
+			}
+			squareBox[i] = -1;
+		}
+
+		List<Location> witnesses = squareWitnesses.get(i);
+		if (witnesses.isEmpty()) {
+			return;
+		}
+
+		List<Integer> key = new ArrayList<>(witnesses.size());
+		for (Location w: witnesses) {
+			key.add(index(w));
+		}
+		Collections.sort(key);
+
+		Integer box = boxIds.get(key);
+		if (box == null) {
+			if (freeBoxIds.isEmpty()) {
+				box = boxKeys.size();
+				boxKeys.add(key);
+				boxSquares.add(0);
+			} else {
+				box = freeBoxIds.poll();
+				boxKeys.set(box, key);
+			}
+			boxIds.put(key, box);
+		}
+
+		squareBox[i] = box;
+		boxSquares.set(box, boxSquares.get(box) + 1);
+
+	}
+
+	private List<Location> newMembers(Location w) {
+		List<Location> result = new ArrayList<>(1);
+		result.add(w);
+		return result;
+	}
+
+	private int index(Location l) {
+		return l.x * height + l.y;
+	}
+
+	/**
+	 * The un-revealed squares next to the witnesses, collected in the same way as BoardState.getUnrevealedArea() does it
+	 */
+	public Area getWitnessedArea(List<? extends Location> witnesses) {
+
+		Set<Location> work = new HashSet<>(witnesses.size() * 3);
+
+		for (Location w: witnesses) {
+			List<Location> adj = witnessSquares.get(index(w));
+			if (adj != null) {
+				work.addAll(adj);
+			}
+		}
+
+		return new Area(work);
+	}
+
+	/**
+	 * The number of living witnesses on the edge
+	 */
+	public int getWitnessCount() {
+		return witnessCount;
+	}
+
+	/**
+	 * The un-revealed squares next to this living witness in the order they are adjacent to it, or null if it isn't a living witness
+	 */
+	public List<Location> getSquares(Location witness) {
+		return witnessSquares.get(index(witness));
+	}
+
+	/**
+	 * The connected group the living witness is in, numbered from 1. Witnesses are connected when a chain of shared squares links them.
+	 * Returns 0 if the location isn't a living witness.
+	 */
+	public int getGroup(Location witness) {
+
+		int i = index(witness);
+		if (parent[i] == -1 || witnessSquares.get(i) == null) {
+			return 0;
+		}
+		return find(i) + 1;
+
+	}
+
+	/**
+	 * The box the square is in, or -1 if no living witness is next to it. Squares share a box when they have the same living witnesses.
+	 */
+	public int getBox(Location square) {
+		return squareBox[index(square)];
+	}
+
+}
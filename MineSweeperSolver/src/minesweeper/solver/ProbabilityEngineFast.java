@@ -3,15 +3,19 @@ package minesweeper.solver;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
 
 import minesweeper.solver.constructs.Box;
 import minesweeper.solver.constructs.CandidateLocation;
@@ -37,6 +41,19 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	
 	private static final boolean CHECK_FOR_DEAD_LOCATIONS = true;
 	
+	// the edge needs at least this many tiles before processing the independent groups in parallel is considered
+	private static final int PARALLEL_MINIMUM_SQUARES = 150;
+	
+	// when there are at least this many probability lines they are merged using a hash table rather than by sorting them all
+	private static final int HASH_MERGE_MINIMUM = 2000;
+	
+	// seed for the random values used to build the probability line hashes
+	private static final long HASH_SEED = 1234567L;
+	
+	// log-space probabilities are allowed this many units in the last place of error for each term they add up
+	private static final int LOG_SPACE_ERROR = 8;
+	private static final double LOG_2 = Math.log(2);
+	
 	private class MergeSorter implements Comparator<ProbabilityLine> {
 
 		int[] checks;
@@ -87,32 +104,95 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		
 	}
 	
-	// used to hold a viable solution 
+	// used to hold a viable solution.  The counts are held as longs until an independent group overflows 63 bits,
+	// that group is then re-processed holding the counts as BigIntegers
 	private class ProbabilityLine implements Comparable<ProbabilityLine> {
 		private int mineCount = 0;
-		private BigInteger solutionCount = BigInteger.ZERO;
-		private BigInteger[] mineBoxCount  = new BigInteger[boxCount];
 		
-		private int[] allocatedMines  = new int[boxCount];   // this is the number of mines originally allocate to a box
+		private final boolean big;    // true when the BigInteger representation is being used
+		
+		private long solutionCount;
+		private long[] mineBoxCount;
+		private long[] hashCount;
+		private long hash = hashRandom.nextInt(1 << 30);
 		
-		private BigInteger[] hashCount  = new BigInteger[boxCount];
-		private BigInteger hash = new BigInteger(30, new Random());
+		private BigInteger bigSolutionCount;
+		private BigInteger[] bigMineBoxCount;
+		private BigInteger[] bigHashCount;
+		private BigInteger bigHash;
+		
+		private int[] allocatedMines  = new int[boxCount];   // this is the number of mines originally allocate to a box
 		
-		{
-			for (int i=0; i < mineBoxCount.length; i++) {
-				mineBoxCount[i] = BigInteger.ZERO;
-				hashCount[i] = BigInteger.ZERO;
+		private ProbabilityLine(boolean big) {
+			
+			this.big = big;
+			
+			if (big) {
+				bigSolutionCount = BigInteger.ZERO;
+				bigMineBoxCount = new BigInteger[boxCount];
+				bigHashCount = new BigInteger[boxCount];
+				bigHash = BigInteger.valueOf(hash);
+				for (int i=0; i < boxCount; i++) {
+					bigMineBoxCount[i] = BigInteger.ZERO;
+					bigHashCount[i] = BigInteger.ZERO;
+				}
+			} else {
+				mineBoxCount = new long[boxCount];
+				hashCount = new long[boxCount];
 			}
 		}
 		
-		private ProbabilityLine() {
-			this(BigInteger.ZERO);
+		private ProbabilityLine(long solutionCount) {
+			this(false);
+			this.solutionCount = solutionCount;
 		}
 		
 		private ProbabilityLine(BigInteger solutionCount) {
-			this.solutionCount = solutionCount;
+			this(true);
+			this.bigSolutionCount = solutionCount;
+		}
+		
+		private BigInteger getBigSolutionCount() {
+			return big ? bigSolutionCount : BigInteger.valueOf(solutionCount);
+		}
+
+		private BigInteger getBigMineBoxCount(int index) {
+			return big ? bigMineBoxCount[index] : BigInteger.valueOf(mineBoxCount[index]);
+		}
+
+		private double getMineBoxCountValue(int index) {
+			return big ? bigMineBoxCount[index].doubleValue() : mineBoxCount[index];
+		}
+		
+		private double getSolutionCountValue() {
+			return big ? bigSolutionCount.doubleValue() : solutionCount;
+		}
+		
+		// true if every tile in the box, which has this many tiles, is a mine in every solution held by this line
+		private boolean isAllMines(int index, int size) {
+			if (big) {
+				return bigMineBoxCount[index].compareTo(BigInteger.valueOf(size).multiply(bigSolutionCount)) == 0;
+			} else {
+				return mineBoxCount[index] % size == 0 && mineBoxCount[index] / size == solutionCount;
+			}
+		}
+
+		private BigInteger getBigHashCount(int index) {
+			return big ? bigHashCount[index] : BigInteger.valueOf(hashCount[index]);
+		}
+
+		private BigInteger getBigHash() {
+			return big ? bigHash : BigInteger.valueOf(hash);
 		}
 		
+		// true if the box has either no mines or exactly 'required' mines in every solution held by this line
+		private boolean isEmptyOrHolds(int index, int required) {
+			if (big) {
+				return bigMineBoxCount[index].signum() == 0 || bigMineBoxCount[index].compareTo(BigInteger.valueOf(required).multiply(bigSolutionCount)) == 0;
+			} else {
+				return mineBoxCount[index] == 0 || mineBoxCount[index] == Math.multiplyExact((long) required, solutionCount);
+			}
+		}
 		
 		@Override
 		// sort by the number of mines in the solution
@@ -161,10 +241,11 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	private SolverSettings settings;
 	private long duration;
 	
-	private List<ProbabilityLine> workingProbs = new ArrayList<>(); // as we work through an independent set of witnesses probabilities are held here
- 	private List<ProbabilityLine> heldProbs = new ArrayList<>();  
+	private List<ProbabilityLine> heldProbs = new ArrayList<>();  
 	
 	private BinomialCache biCache;
+	private final Random hashRandom = new Random(HASH_SEED);   // shared by every probability line this engine creates
+	private final EdgeGroupCache groupCache;       // results of independent groups processed earlier, null if not being used
 	private BigInteger[] hashTally;
 	private boolean offEdgeBest = true;
 	private BigDecimal offEdgeSafety;
@@ -176,9 +257,6 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	
 	//private BigDecimal cutoffProbability;
 
-	//when set to true indicates that the box has been part of this analysis
-	private boolean[] mask;           
-	
 	private List<LinkedLocation> linkedLocations = new ArrayList<>();
 	private List<LinkedLocation> contraLinkedLocations = new ArrayList<>();
 	//private List<Location> dominatedTiles = new ArrayList<>();
@@ -202,8 +280,6 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	private boolean allDead = true;
 	
 	private int independentGroups = 0;
-	private int recursions = 0;
-	private boolean canDoDeadTileAnalysis;
 	
 	private BigInteger finalSolutionsCount;
 	private int clearCount;
@@ -226,6 +302,7 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		this.boardState = boardState;
 		this.logger = logger;
 		this.settings = this.boardState.getSolver().preferences;
+		this.groupCache = this.boardState.getSolver().groupCache;
 		
 		this.web = web;
 		this.minesLeft = minesLeft;
@@ -274,36 +351,35 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 			determineCandidateDeadLocations();			
 		}
 
-		// if we compress the probability lines before the edge is completely processed we can't use the data to look for dead tiles
-		canDoDeadTileAnalysis = true;
-		
 		// create an initial solution of no mines anywhere
-		heldProbs.add(new ProbabilityLine(BigInteger.ONE));
-		
-		// add an empty probability line to get us started
-		workingProbs.add(new ProbabilityLine(BigInteger.ONE));
-		
-		// create an empty mask - indicating no boxes have been processed
-		mask = new boolean[boxCount];           
-		
-		NextWitness witness = findFirstWitness();
+		heldProbs.add(new ProbabilityLine(1L));
+		
+		// find the independent groups up front if we can reuse earlier results or if the edge is large enough to process them in parallel
+		boolean parallel = !settings.isSingleThread() && web.getSquares().size() >= PARALLEL_MINIMUM_SQUARES;
+		List<Witness> groupStarts = null;
+		int[] boxGroup = null;
+		if (groupCache != null || parallel) {
+			boxGroup = new int[boxCount];
+			groupStarts = findIndependentGroups(boxGroup);
+		}
 		
-		while (witness != null) {
+		if (groupStarts != null) {
+			processGroups(groupStarts, boxGroup, parallel && groupStarts.size() > 1);
 			
-			// mark the new boxes as processed - which they will be soon
-			for (Box b: witness.newBoxes) {
-				mask[b.getUID()] = true;
-			}
-			
-			//System.out.println("Processing " + witness.witness.getLocation().display());
-			
-			workingProbs = mergeProbabilities(witness);
-			
-			witness = findNextWitness(witness);
+		} else {
+			Witness witness = findFirstWitness();
 			
+			while (witness != null) {
+				
+				EdgeGroup group = new EdgeGroup(witness, deadCandidates);
+				group.process();
+				
+				storeGroup(group);
+				
+				witness = findFirstWitness();
+			}
 		}
 		
-		
 		calculateBoxProbabilities();
 		
 		/*
@@ -315,314 +391,1479 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		duration = System.currentTimeMillis() - startTime;
 	}
 	
-	private List<ProbabilityLine> crunchByMineCount(List<ProbabilityLine> target, MergeSorter sorter) {
-		
-		if (target.isEmpty()) {
-			return target;
-		}
-		
-		// sort the solutions by number of mines
-		Collections.sort(target, sorter);
+	// label each box with the independent group it belongs to and return the first witness of each group.  
+	// The groups are found in the same order the sequential processing finds them.
+	private List<Witness> findIndependentGroups(int[] boxGroup) {
 		
-		List<ProbabilityLine> result = new ArrayList<>();
+		Arrays.fill(boxGroup, -1);
 		
-		ProbabilityLine current = null;
+		// if the web came from the solver's edge then the witnesses already know their group
+		if (web.hasEdgeGroups()) {
+			return findEdgeGroups(boxGroup);
+		}
 		
+		List<Witness> starts = new ArrayList<>();
+		Set<Witness> found = new HashSet<>();
+		Deque<Witness> todo = new ArrayDeque<>();
 		
-		for (ProbabilityLine pl: target) {
-
-			/*
-			String show = pl.mineCount + " : " + pl.solutionCount + " : ";
-			for (int i=0; i < pl.mineBoxCount.length; i++) {
-				show = show + pl.mineBoxCount[i] + " ";
-			}
-			boardState.display(show);
-			*/
+		for (Witness w: witnesses) {
 			
-			if (current == null) {
-				current = pl;
-			} else if (sorter.compare(current, pl) != 0) {
-				result.add(current);
-				current = pl;
-			} else {
-				//boardState.display("Combining");
-				combineProbabilities(current, pl);
+			if (!found.add(w)) {
+				continue;
 			}
 			
-		}
-
-		result.add(current);
-
-		logger.log(Level.DEBUG, "%d Probability Lines compressed to %d", target.size(), result.size()); 
+			int group = starts.size();
+			starts.add(w);
 			
-		return result;
+			todo.add(w);
+			while (!todo.isEmpty()) {
+				for (Box b: todo.poll().getBoxes()) {
+					if (boxGroup[b.getUID()] == -1) {
+						boxGroup[b.getUID()] = group;
+						for (Witness bw: b.getWitnesses()) {
+							if (found.add(bw)) {
+								todo.add(bw);
+							}
+						}
+					}
+				}
+			}
+		}
+		
+		return starts;
 		
 	}
-
 	
-	// calculate how many ways this solution can be generated and roll them into one
-	private void combineProbabilities(ProbabilityLine npl, ProbabilityLine pl) {
+	// number the edge's groups in the order their first witness is met and give each box the group of its witnesses
+	private List<Witness> findEdgeGroups(int[] boxGroup) {
 		
-		/*
-		BigInteger solutions = BigInteger.ONE;
-		for (int i = 0; i < pl.mineBoxCount.length; i++) {
-			solutions = solutions.multiply(BigInteger.valueOf(SMALL_COMBINATIONS[boxes.get(i).getSquares().size()][pl.mineBoxCount[i].intValue()]));
-		}
-
-		npl.solutionCount = npl.solutionCount.add(solutions);
-		*/
-		npl.solutionCount = npl.solutionCount.add(pl.solutionCount);
-		npl.hash = npl.hash.add(pl.hash);
+		List<Witness> starts = new ArrayList<>();
+		Map<Integer, Integer> groups = new HashMap<>();
 		
-		for (int i = 0; i < pl.mineBoxCount.length; i++) {
-			if (mask[i]) {  // if this box has been involved in this solution - if we don't do this the hash gets corrupted by boxes = 0 mines because they weren't part of this edge
-	 			//npl.mineBoxCount[i] = npl.mineBoxCount[i].add(pl.mineBoxCount[i].multiply(solutions));
-	 			npl.mineBoxCount[i] = npl.mineBoxCount[i].add(pl.mineBoxCount[i]);
-	 			npl.hashCount[i] = npl.hashCount[i].add(pl.hashCount[i]);
-	 			
-				//if (pl.mineBoxCount[i].signum() == 0) {
-				//	npl.hashCount[i] = npl.hashCount[i].subtract(pl.hash);   // treat no mines as -1 rather than zero
-				//} else {
-				//	npl.hashCount[i] = npl.hashCount[i].add(pl.mineBoxCount[i].multiply(pl.hash));
-				//}				
+		for (Witness w: witnesses) {
+			
+			Integer group = groups.get(w.getWebNum());
+			if (group == null) {
+				group = starts.size();
+				starts.add(w);
+				groups.put(w.getWebNum(), group);
+			}
+			
+			for (Box b: w.getBoxes()) {
+				boxGroup[b.getUID()] = group;
 			}
 		}
 		
-		
+		return starts;
 		
 	}
 	
-	// this combines newly generated probabilities with ones we have already stored from other independent sets of witnesses
-	private void storeProbabilities() {
-		
-		List<ProbabilityLine> result = new ArrayList<>(); 
+	// process each independent group separately, reusing earlier results where the group hasn't changed, and then combine the results in a single step.
+	// When running in parallel each group still needing processing is a separate fork/join task.
+	private void processGroups(List<Witness> groupStarts, int[] boxGroup, boolean parallel) {
 		
-		//if (workingProbs.isEmpty()) {
-		//	solver.display("working probabilites list is empty!!");
-		//	return;
-		//} 
-		
-		//if (CHECK_FOR_DEAD_LOCATIONS) {
-		//	checkCandidateDeadLocations();			
-		//}
-	
-		// crunch the new ones down to one line per mine count
-		//List<ProbabilityLine> crunched = crunchByMineCount(workingProbs);
-
-		List<ProbabilityLine> crunched = workingProbs;
+		if (parallel) {
+			logger.log(Level.INFO, "Processing %d independent groups in parallel", groupStarts.size());
+		}
 		
-		if (crunched.size() == 1) { // if the size is one then the number of mines in the area is fixed
-			checkEdgeIsIsolated(true);
-		} else {
-			/*
-			boolean deferedGuessing = true;
-			for (ProbabilityLine pl: crunched) {
-				if (!pl.solutionCount.equals(BigInteger.ONE)) {
-					deferedGuessing = false;
-					break;
+		// give each dead candidate to the group it belongs to, if it spans groups then it is alive
+		List<List<DeadCandidate>> groupCandidates = new ArrayList<>(groupStarts.size());
+		for (int i=0; i < groupStarts.size(); i++) {
+			groupCandidates.add(new ArrayList<>());
+		}
+		for (DeadCandidate dc: deadCandidates) {
+			int group = -1;
+			for (Box b: dc.goodBoxes) {
+				if (group == -1 || group == boxGroup[b.getUID()]) {
+					group = boxGroup[b.getUID()];
+				} else {
+					dc.isAlive = true;
 				}
 			}
-			if (deferedGuessing && checkEdgeIsIsolated(false)) {
-				logger.log(Level.INFO, "Seed %s Defered guess found", boardState.getSolver().getGame().getSeed());
-				for (int i=0; i < mask.length; i++) {
-					if (mask[i]) {
-						this.boxes.get(i).setDeferGuessing();
-					}
+			for (Box b: dc.badBoxes) {
+				if (group == -1 || group == boxGroup[b.getUID()]) {
+					group = boxGroup[b.getUID()];
+				} else {
+					dc.isAlive = true;
 				}
 			}
-			*/
+			if (dc.isAlive) {
+				logger.log(Level.DEBUG, "Tile %s has boxes in more than one independent group so assumed alive", dc.candidate);
+			} else {
+				groupCandidates.get(group).add(dc);
+			}
 		}
-
 		
-		//solver.display("New data has " + crunched.size() + " entries");
+		// the results of a group can only be reused when they don't depend on the rest of the board, which isn't the case when there are no tiles off the edge
+		boolean useCache = (groupCache != null && tilesOffEdge != 0);
 		
-		for (ProbabilityLine pl: crunched) {
+		// collect the witnesses and boxes in each group to fingerprint it
+		List<List<Witness>> groupWitnesses = new ArrayList<>(groupStarts.size());
+		List<List<Box>> groupBoxes = new ArrayList<>(groupStarts.size());
+		if (useCache) {
+			for (int i=0; i < groupStarts.size(); i++) {
+				groupWitnesses.add(new ArrayList<>());
+				groupBoxes.add(new ArrayList<>());
+			}
+			for (Witness w: witnesses) {
+				groupWitnesses.get(boxGroup[w.getBoxes().get(0).getUID()]).add(w);
+			}
+			for (Box b: boxes) {
+				groupBoxes.get(boxGroup[b.getUID()]).add(b);
+			}
+		}
+		
+		List<EdgeGroup> groups = new ArrayList<>(groupStarts.size());
+		List<EdgeGroup> toProcess = new ArrayList<>(groupStarts.size());
+		for (int i=0; i < groupStarts.size(); i++) {
+			EdgeGroup group = new EdgeGroup(groupStarts.get(i), groupCandidates.get(i));
+			groups.add(group);
 			
-			for (ProbabilityLine epl: heldProbs) {
-
-				if (pl.mineCount + epl.mineCount <= maxTotalMines) {
-					
-					ProbabilityLine npl = new ProbabilityLine(pl.solutionCount.multiply(epl.solutionCount));
-					npl.mineCount = pl.mineCount + epl.mineCount;
-					npl.hash = epl.hash.add(pl.hash);
-					
-					//npl.solutionCount = pl.solutionCount.multiply(epl.solutionCount);
-					
-					for (int i=0; i < npl.mineBoxCount.length; i++) {
-						
-						BigInteger w1 = pl.mineBoxCount[i].multiply(epl.solutionCount);
-						BigInteger w2 = epl.mineBoxCount[i].multiply(pl.solutionCount);
-						npl.mineBoxCount[i] = w1.add(w2);
-						
-						npl.hashCount[i] = epl.hashCount[i].add(pl.hashCount[i]);
-
-					}
-					result.add(npl);
-					
+			if (useCache) {
+				
+				// first look for the group where it is on this board
+				group.localPrint = fingerprint(groupWitnesses.get(i), groupBoxes.get(i), 0, false);
+				if (group.restore(groupCache.get(group.localPrint.key), group.localPrint)) {
+					continue;
 				}
 				
+				// then look for the same shape of group seen anywhere
+				group.shapePrint = shapeFingerprint(groupWitnesses.get(i), groupBoxes.get(i));
+				if (group.restore(Solver.edgeShapeCache.get(group.shapePrint.key), group.shapePrint)) {
+					groupCache.put(group.localPrint.key, group.getResult(group.localPrint));
+					continue;
+				}
+			}
+			
+			toProcess.add(group);
+		}
+		
+		if (parallel && toProcess.size() > 1) {
+			List<ForkJoinTask<?>> tasks = new ArrayList<>(toProcess.size());
+			for (EdgeGroup group: toProcess) {
+				tasks.add(ForkJoinTask.adapt(group::process));
 			}
+			ForkJoinTask.invokeAll(tasks);
 			
+		} else {
+			for (EdgeGroup group: toProcess) {
+				group.process();
+			}
+		}
+		
+		// convolve the groups' mine count distributions together
+		for (EdgeGroup group: groups) {
+			storeGroup(group);
+		}
+		
+		// remember the groups we had to process so later moves can reuse them
+		if (useCache) {
+			logger.log(Level.INFO, "%d of %d independent groups reused from earlier processing", groups.size() - toProcess.size(), groups.size());
+			for (EdgeGroup group: toProcess) {
+				if (!group.bigGroup) {
+					groupCache.put(group.localPrint.key, group.getResult(group.localPrint));
+					Solver.edgeShapeCache.put(group.shapePrint.key, group.getResult(group.shapePrint));
+				}
+			}
 		}
+		
+	}
 	
-		// sort into mine order 
-		Collections.sort(result);
+	// the fingerprint of an independent group in one orientation, with the group's boxes in the order they appear in the fingerprint
+	private class Fingerprint {
 		
-		heldProbs.clear();
+		private final int transform;   // bit 0 reflects x, bit 1 reflects y and bit 2 swaps x and y
+		private int offsetX = 0;
+		private int offsetY = 0;
 		
-		// if result is empty this is an impossible position
-		if (result.isEmpty()) {
-			return;
+		private EdgeGroupCache.Key key;
+		private final List<Box> keyBoxes = new ArrayList<>();
+		
+		private Fingerprint(int transform) {
+			this.transform = transform;
 		}
 		
-		// and combine them into a single probability line for each mine count
-		int mc = result.get(0).mineCount;
-		ProbabilityLine npl = new ProbabilityLine();
-		npl.mineCount = mc;
+		private int transformX(Location l) {
+			int x = (transform & 4) == 0 ? l.x : l.y;
+			return (transform & 1) == 0 ? x : -x;
+		}
 		
-		for (ProbabilityLine pl: result) {
-			if (pl.mineCount != mc) {
-				heldProbs.add(npl);
-				mc = pl.mineCount;
-				npl = new ProbabilityLine();
-				npl.mineCount = mc;
+		private int transformY(Location l) {
+			int y = (transform & 4) == 0 ? l.y : l.x;
+			return (transform & 2) == 0 ? y : -y;
+		}
+		
+		// where the location appears in the fingerprint
+		private Location toKey(Location l) {
+			return new Location(transformX(l) - offsetX, transformY(l) - offsetY);
+		}
+		
+	}
+	
+	// build the fingerprint of an independent group from its witnesses, their values and the tiles in each of its boxes after applying the transform.
+	// If translating, the group is moved so its top left corner is at (0,0).
+	private Fingerprint fingerprint(List<Witness> groupWitnesses, List<Box> groupBoxes, int transform, boolean translate) {
+		
+		Fingerprint print = new Fingerprint(transform);
+		
+		if (translate) {
+			int minX = Integer.MAX_VALUE;
+			int minY = Integer.MAX_VALUE;
+			for (Witness w: groupWitnesses) {
+				minX = Math.min(minX, print.transformX(w));
+				minY = Math.min(minY, print.transformY(w));
 			}
-			npl.solutionCount = npl.solutionCount.add(pl.solutionCount);
-			npl.hash = npl.hash.add(pl.hash);
-			
-			for (int i = 0; i < pl.mineBoxCount.length; i++) {
-				npl.mineBoxCount[i] = npl.mineBoxCount[i].add(pl.mineBoxCount[i]);
-				
-				npl.hashCount[i] = npl.hashCount[i].add(pl.hashCount[i]);
+			for (Box b: groupBoxes) {
+				for (Square squ: b.getSquares()) {
+					minX = Math.min(minX, print.transformX(squ));
+					minY = Math.min(minY, print.transformY(squ));
+				}
 			}
+			print.offsetX = minX;
+			print.offsetY = minY;
 		}
-
-		heldProbs.add(npl);
-
-		/*
-		for (Box b: boxes) {
-			System.out.print(b.getSquares().size() + " ");
+		
+		// the witnesses are sorted by where they appear in the fingerprint
+		final Location[] witnessAt = new Location[groupWitnesses.size()];
+		Integer[] witnessOrder = new Integer[groupWitnesses.size()];
+		for (int i=0; i < witnessAt.length; i++) {
+			witnessAt[i] = print.toKey(groupWitnesses.get(i));
+			witnessOrder[i] = i;
 		}
-		System.out.println("");
-		for (ProbabilityLine pl: heldProbs) {
-			System.out.print("Mines = " + pl.mineCount + " solutions = " + pl.solutionCount + " boxes: ");
-			for (int i=0; i < pl.mineBoxCount.length; i++) {
-				System.out.print(" " + pl.mineBoxCount[i]);
+		Arrays.sort(witnessOrder, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer w1, Integer w2) {
+				return witnessAt[w1].compareTo(witnessAt[w2]);
+			}
+		});
+		
+		// as are the tiles in each box, and the boxes are sorted by their first tile
+		final Location[][] tilesAt = new Location[groupBoxes.size()][];
+		Integer[] boxOrder = new Integer[groupBoxes.size()];
+		int tiles = 0;
+		for (int i=0; i < tilesAt.length; i++) {
+			List<Square> squares = groupBoxes.get(i).getSquares();
+			tilesAt[i] = new Location[squares.size()];
+			for (int j=0; j < squares.size(); j++) {
+				tilesAt[i][j] = print.toKey(squares.get(j));
+			}
+			Arrays.sort(tilesAt[i]);
+			boxOrder[i] = i;
+			tiles = tiles + squares.size();
+		}
+		Arrays.sort(boxOrder, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer b1, Integer b2) {
+				return tilesAt[b1][0].compareTo(tilesAt[b2][0]);
+			}
+		});
+		
+		int[] data = new int[3 + witnessAt.length * 3 + tilesAt.length + tiles * 2];
+		int index = 0;
+		
+		// the mines left only matter when they could restrict how many mines are in the group
+		data[index++] = Math.min(minesLeft, tiles);
+		
+		data[index++] = witnessAt.length;
+		for (int i: witnessOrder) {
+			data[index++] = witnessAt[i].x;
+			data[index++] = witnessAt[i].y;
+			data[index++] = groupWitnesses.get(i).getMines();
+		}
+		
+		data[index++] = tilesAt.length;
+		for (int i: boxOrder) {
+			print.keyBoxes.add(groupBoxes.get(i));
+			data[index++] = tilesAt[i].length;
+			for (Location tile: tilesAt[i]) {
+				data[index++] = tile.x;
+				data[index++] = tile.y;
 			}
-			System.out.println("");
 		}
-		*/
 		
+		print.key = new EdgeGroupCache.Key(data);
+		
+		return print;
 		
 	}
 	
-	// here we expand the localised solution to one across the whole board and
-	// sum them together to create a definitive probability for each box
-	private void calculateBoxProbabilities() {
+	// the fingerprint of the group's shape, this is the same wherever the group is on the board and however it is reflected or rotated
+	private Fingerprint shapeFingerprint(List<Witness> groupWitnesses, List<Box> groupBoxes) {
 		
-		//BigInteger[] tally = new BigInteger[boxCount];
-		for (int i=0; i < hashTally.length; i++) {
-			//tally[i] = BigInteger.ZERO;
-			hashTally[i] =  BigInteger.ZERO;
+		Fingerprint best = null;
+		for (int transform=0; transform < 8; transform++) {
+			Fingerprint print = fingerprint(groupWitnesses, groupBoxes, transform, true);
+			if (best == null || print.key.compareTo(best.key) < 0) {
+				best = print;
+			}
 		}
-
-		// total game tally
-		BigInteger totalTally = BigInteger.ZERO;
 		
-		// outside a box tally
-		BigInteger outsideTally = BigInteger.ZERO;
+		return best;
+	}
+	
+	// add the results of a fully processed independent group to what we already hold
+	private void storeGroup(EdgeGroup group) {
 		
-		// calculate how many mines 
-		BigInteger mult = null;
-		int prevMinesToPlace = 0;
-		for (ProbabilityLine pl: heldProbs) {
+		independentGroups++;
+		
+		for (Location dead: group.deadFound) {
+			deadLocations = deadLocations.add(dead);
+		}
+		
+		isolatedEdges.addAll(group.isolatedFound);
+		
+		storeProbabilities(group.workingProbs);
+		
+	}
+	
+	// holds the working state while an independent group of witnesses is processed, so groups can be processed separately
+	private class EdgeGroup {
+		
+		private final Witness start;                         // the witness this group is processed from
+		private final List<DeadCandidate> candidates;        // the dead candidates which can be checked by this group
+		
+		private List<ProbabilityLine> workingProbs = new ArrayList<>(); // as we work through an independent set of witnesses probabilities are held here
+		
+		//when set to true indicates that the box has been part of this analysis
+		private boolean[] mask = new boolean[boxCount];
+		
+		// if we compress the probability lines before the edge is completely processed we can't use the data to look for dead tiles
+		private boolean canDoDeadTileAnalysis = true;
+		
+		// when set the group holds its counts as BigIntegers 
+		private boolean bigGroup = false;
+		private final List<Witness> groupWitnesses = new ArrayList<>();  // witnesses processed so far in this group
+		
+		private int recursions = 0;
+		
+		// probability lines which have been discarded and can be reused when a line is extended, avoiding allocating the arrays again
+		private final Deque<ProbabilityLine> spareLines = new ArrayDeque<>();
+		
+		// results which are passed back to the engine once the group is complete
+		private final List<Location> deadFound = new ArrayList<>();
+		private final List<BruteForce> isolatedFound = new ArrayList<>();
+		
+		// the fingerprints of the group where it is on the board and of its shape, only set when results are being cached
+		private Fingerprint localPrint;
+		private Fingerprint shapePrint;
+		
+		private EdgeGroup(Witness start, List<DeadCandidate> candidates) {
 			
-			if (pl.mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
-				
-				if (mineCounts.put(pl.mineCount, pl.solutionCount) != null) {
-					logger.log(Level.ERROR, "Duplicate mines in probability Engine (merging probability lines not working?)");
-				}
-				
-				int currentMinesToPlace = minesLeft - pl.mineCount; // mines left - mines on the edge
-				
-				if (biCache != null) {
-					mult = biCache.getBinomial(currentMinesToPlace, tilesOffEdge);
+			this.start = start;
+			this.candidates = candidates;
+			
+			// add an empty probability line to get us started
+			workingProbs.add(new ProbabilityLine(1L));
+		}
+		
+		// process every witness in the group, leaving the result crunched to one line per mine count
+		private void process() {
+			
+			NextWitness witness = new NextWitness(start);
+			
+			while (witness != null) {
 				
-				} else if (mult == null || tilesOffEdge <= Solver.BINOMIAL_CACHE_LIMIT) {
-					mult = Solver.combination(currentMinesToPlace, tilesOffEdge);  //# of ways the rest of the board can be formed
+				try {
+					// mark the new boxes as processed - which they will be soon
+					for (Box b: witness.newBoxes) {
+						mask[b.getUID()] = true;
+					}
 					
-				} else if (currentMinesToPlace == prevMinesToPlace - 1) {
-					mult = mult.multiply(BigInteger.valueOf(prevMinesToPlace)).divide(BigInteger.valueOf(tilesOffEdge - prevMinesToPlace + 1));
-
-				} else {
-					mult = Solver.combination(currentMinesToPlace, tilesOffEdge);  //# of ways the rest of the board can be formed
+					//System.out.println("Processing " + witness.witness.getLocation().display());
+					
+					workingProbs = mergeProbabilities(witness);
+					
+					witness = findNextWitness(witness);
+					
+					if (witness == null) {
+						crunchGroup();
+					}
+					
+				} catch (ArithmeticException e) {   // the counts no longer fit in a long
+					if (bigGroup) {
+						throw e;
+					}
+					witness = restartGroupAsBig();
 				}
-
-				//mult = Solver.combination(currentMinesToPlace, tilesOffEdge);  //# of ways the rest of the board can be formed
 				
-				prevMinesToPlace = currentMinesToPlace;
+			}
+			
+			completeGroup();
+			
+		}
+		
+		// take the result of an identical group processed earlier instead of processing this one, returns false if the result can't be used
+		private boolean restore(EdgeGroupCache.Result result, Fingerprint print) {
+			
+			if (result == null) {
+				return false;
+			}
+			
+			// the result can only be used if it checked the same dead candidates, they can differ as tiles next to the group are resolved
+			for (DeadCandidate dc: candidates) {
+				if (!result.candidates.containsKey(print.toKey(dc.candidate))) {
+					return false;
+				}
+			}
+			
+			List<Box> keyBoxes = print.keyBoxes;
+			
+			workingProbs.clear();
+			for (int i=0; i < result.mineCount.length; i++) {
+				ProbabilityLine pl = new ProbabilityLine(result.solutionCount[i]);
+				pl.mineCount = result.mineCount[i];
+				for (int j=0; j < keyBoxes.size(); j++) {
+					pl.mineBoxCount[keyBoxes.get(j).getUID()] = result.mineBoxCount[i][j];
+				}
+				workingProbs.add(pl);
+			}
+			
+			for (Box b: keyBoxes) {
+				mask[b.getUID()] = true;
+				b.setProcessed(true);
+				for (Witness w: b.getWitnesses()) {
+					w.setProcessed(true);
+				}
+			}
+			
+			// every candidate given to this group gets the same outcome as when the group was processed
+			for (DeadCandidate dc: candidates) {
+				int total = result.candidates.get(print.toKey(dc.candidate));
+				if (total == EdgeGroupCache.ALIVE) {
+					dc.isAlive = true;
+				} else {
+					dc.total = total;
+					deadFound.add(dc.candidate);
+				}
+			}
+			
+			completeGroup();
+			
+			return true;
+			
+		}
+		
+		// the result of processing this group in a form which can be reused by a later engine
+		private EdgeGroupCache.Result getResult(Fingerprint print) {
+			
+			List<Box> keyBoxes = print.keyBoxes;
+			
+			int[] mineCount = new int[workingProbs.size()];
+			long[] solutionCount = new long[workingProbs.size()];
+			long[][] mineBoxCount = new long[workingProbs.size()][keyBoxes.size()];
+			for (int i=0; i < workingProbs.size(); i++) {
+				ProbabilityLine pl = workingProbs.get(i);
+				mineCount[i] = pl.mineCount;
+				solutionCount[i] = pl.solutionCount;
+				for (int j=0; j < keyBoxes.size(); j++) {
+					mineBoxCount[i][j] = pl.mineBoxCount[keyBoxes.get(j).getUID()];
+				}
+			}
+			
+			Map<Location, Integer> checked = new HashMap<>();
+			for (DeadCandidate dc: candidates) {
+				if (dc.isAlive) {
+					checked.put(print.toKey(dc.candidate), EdgeGroupCache.ALIVE);
+				} else {
+					checked.put(print.toKey(dc.candidate), dc.total);
+				}
+			}
+			
+			return new EdgeGroupCache.Result(mineCount, solutionCount, mineBoxCount, checked);
+			
+		}
+		
+		// look for an isolated edge and record the size of the edge in each of the group's boxes
+		private void completeGroup() {
+			
+			if (workingProbs.size() == 1) { // if the size is one then the number of mines in the area is fixed
+				checkEdgeIsIsolated(true);
+			} else {
+				/*
+				boolean deferedGuessing = true;
+				for (ProbabilityLine pl: workingProbs) {
+					if (!pl.solutionCount.equals(BigInteger.ONE)) {
+						deferedGuessing = false;
+						break;
+					}
+				}
+				if (deferedGuessing && checkEdgeIsIsolated(false)) {
+					logger.log(Level.INFO, "Seed %s Defered guess found", boardState.getSolver().getGame().getSeed());
+					for (int i=0; i < mask.length; i++) {
+						if (mask[i]) {
+							boxes.get(i).setDeferGuessing();
+						}
+					}
+				}
+				*/
+			}
+			
+			// count how many tiles where on this edge
+			int totalTiles = 0;
+			for (int i=0; i < mask.length; i++) {
+				if (mask[i]) {
+					Box b = boxes.get(i);
+					totalTiles = totalTiles + b.getSquares().size();
+				}
+			}
+			// and store that information in the box
+			for (int i=0; i < mask.length; i++) {
+				if (mask[i]) {
+					Box b = boxes.get(i);
+					b.setEdgeLength(totalTiles);
+				}
+			}		
+			
+		}
+		
+		// the group has overflowed, so undo its processing and start it again using BigIntegers
+		private NextWitness restartGroupAsBig() {
+		
+			logger.log(Level.INFO, "Independent group overflowed a long after %d witnesses, reprocessing it using BigIntegers", groupWitnesses.size());
+		
+			bigGroup = true;
+		
+			for (Witness w: groupWitnesses) {
+				w.setProcessed(false);
+			}
+			groupWitnesses.clear();
+		
+			for (int i=0; i < mask.length; i++) {
+				if (mask[i]) {
+					boxes.get(i).setProcessed(false);
+				}
+			}
+			mask = new boolean[boxCount]; 
+		
+			canDoDeadTileAnalysis = true;
+			deadFound.clear();
+		
+			workingProbs.clear();
+			workingProbs.add(new ProbabilityLine(BigInteger.ONE));
+		
+			return new NextWitness(start);
+		
+		}
+	
+		private List<ProbabilityLine> crunchByMineCount(List<ProbabilityLine> target, MergeSorter sorter) {
+		
+			if (target.isEmpty()) {
+				return target;
+			}
+			
+			if (target.size() >= HASH_MERGE_MINIMUM) {
+				return crunchByHash(target, sorter);
+			}
+		
+			// sort the solutions by number of mines
+			Collections.sort(target, sorter);
+		
+			List<ProbabilityLine> result = new ArrayList<>();
+		
+			ProbabilityLine current = null;
+		
+		
+			for (ProbabilityLine pl: target) {
+
+				/*
+				String show = pl.mineCount + " : " + pl.solutionCount + " : ";
+				for (int i=0; i < pl.mineBoxCount.length; i++) {
+					show = show + pl.mineBoxCount[i] + " ";
+				}
+				boardState.display(show);
+				*/
+			
+				if (current == null) {
+					current = pl;
+				} else if (sorter.compare(current, pl) != 0) {
+					result.add(current);
+					current = pl;
+				} else {
+					//boardState.display("Combining");
+					combineProbabilities(current, pl);
+					releaseLine(pl);
+				}
+			
+			}
+
+			result.add(current);
+
+			logger.log(Level.DEBUG, "%d Probability Lines compressed to %d", target.size(), result.size()); 
+			
+			return result;
+		
+		}
+		
+		// merge the lines in one pass using an open addressing hash table keyed on the mine count and the mines allocated to each of the sorter's boxes 
+		// packed into longs. Only the merged lines are sorted, so the result is the same as sorting and scanning the whole list.
+		private List<ProbabilityLine> crunchByHash(List<ProbabilityLine> target, MergeSorter sorter) {
+			
+			int[] checks = sorter.checks;
+			
+			// the number of bits needed for each field of the key, the mine count followed by the mines in each box
+			int maxMines = 0;
+			for (ProbabilityLine pl: target) {
+				maxMines = Math.max(maxMines, pl.mineCount);
+			}
+			int[] bits = new int[checks.length + 1];
+			bits[0] = 32 - Integer.numberOfLeadingZeros(maxMines);
+			for (int i=0; i < checks.length; i++) {
+				bits[i + 1] = 32 - Integer.numberOfLeadingZeros(boxes.get(checks[i]).getSquares().size());
+			}
+			
+			// how many longs are needed to hold the key, a field is never split across two longs
+			int width = 1;
+			int used = 0;
+			for (int b: bits) {
+				if (used + b > 64) {
+					width++;
+					used = 0;
+				}
+				used = used + b;
+			}
+			
+			// a power of 2 at least twice the number of lines
+			int capacity = Integer.highestOneBit(target.size() * 4 - 1);
+			int mask = capacity - 1;
+			
+			long[] keys = new long[capacity * width];
+			int[] slots = new int[capacity];   // index into the result of the line held in this slot, or -1 if empty 
+			Arrays.fill(slots, -1);
+			
+			List<ProbabilityLine> result = new ArrayList<>();
+			
+			long[] key = new long[width];
+			line: for (ProbabilityLine pl: target) {
 				
-				outsideTally = outsideTally.add(mult.multiply(BigInteger.valueOf(minesLeft - pl.mineCount)).multiply(pl.solutionCount));
+				// pack the key
+				Arrays.fill(key, 0);
+				int word = 0;
+				used = 0;
+				for (int i=0; i < bits.length; i++) {
+					if (used + bits[i] > 64) {
+						word++;
+						used = 0;
+					}
+					long value = (i == 0) ? pl.mineCount : pl.allocatedMines[checks[i - 1]];
+					key[word] = key[word] | (value << used);
+					used = used + bits[i];
+				}
 				
-				// this is all the possible ways the mines can be placed across the whole game
-				totalTally = totalTally.add(mult.multiply(pl.solutionCount));
+				long hash = 0;
+				for (long k: key) {
+					hash = (hash ^ k) * 0x9E3779B97F4A7C15L;
+				}
+				int slot = (int) (hash ^ (hash >>> 32)) & mask;
 				
-				for (Box b: this.boxes) {
-					BigInteger contribution = mult.multiply(pl.mineBoxCount[b.getUID()]).divide(BigInteger.valueOf(b.getSquares().size()));
+				// probe until we find this key or an empty slot
+				while (slots[slot] != -1) {
+					boolean same = true;
+					for (int i=0; i < width; i++) {
+						if (keys[slot * width + i] != key[i]) {
+							same = false;
+							break;
+						}
+					}
+					if (same) {
+						combineProbabilities(result.get(slots[slot]), pl);
+						releaseLine(pl);
+						continue line;
+					}
+					slot = (slot + 1) & mask;
+				}
+				
+				slots[slot] = result.size();
+				System.arraycopy(key, 0, keys, slot * width, width);
+				result.add(pl);
+			}
+			
+			Collections.sort(result, sorter);
+			
+			logger.log(Level.DEBUG, "%d Probability Lines compressed to %d using a hash table", target.size(), result.size()); 
+			
+			return result;
+			
+		}
+
+	
+		// calculate how many ways this solution can be generated and roll them into one
+		private void combineProbabilities(ProbabilityLine npl, ProbabilityLine pl) {
+		
+			if (npl.big) {
+				npl.bigSolutionCount = npl.bigSolutionCount.add(pl.bigSolutionCount);
+				npl.bigHash = npl.bigHash.add(pl.bigHash);
+			} else {
+				npl.solutionCount = Math.addExact(npl.solutionCount, pl.solutionCount);
+				npl.hash = Math.addExact(npl.hash, pl.hash);
+			}
+		
+			for (int i = 0; i < boxCount; i++) {
+				if (mask[i]) {  // if this box has been involved in this solution - if we don't do this the hash gets corrupted by boxes = 0 mines because they weren't part of this edge
+					if (npl.big) {
+			 			npl.bigMineBoxCount[i] = npl.bigMineBoxCount[i].add(pl.bigMineBoxCount[i]);
+			 			npl.bigHashCount[i] = npl.bigHashCount[i].add(pl.bigHashCount[i]);
+					} else {
+			 			npl.mineBoxCount[i] = Math.addExact(npl.mineBoxCount[i], pl.mineBoxCount[i]);
+			 			npl.hashCount[i] = Math.addExact(npl.hashCount[i], pl.hashCount[i]);
+					}
+				}
+			}
+		
+		}
+	
+		private List<ProbabilityLine> mergeProbabilities(NextWitness nw) {
+		
+			List<ProbabilityLine> newProbs = new ArrayList<>();
+		
+			for (ProbabilityLine pl: workingProbs) {
+			
+				int missingMines = nw.witness.getMines() - countPlacedMines(pl, nw);
+			
+				if (missingMines < 0) {
+					// too many mines placed around this witness previously, so this probability can't be valid
+					releaseLine(pl);
+				} else if (missingMines == 0) {
+					newProbs.add(pl);   // witness already exactly satisfied, so nothing to do
+				} else if (nw.newBoxes.isEmpty()) {
+					// nowhere to put the new mines, so this probability can't be valid
+					releaseLine(pl);
+				} else {
+					List<ProbabilityLine> extended = distributeMissingMines(pl, nw, missingMines, 0);
+					releaseUnlessReused(pl, extended);
+					newProbs.addAll(extended);
+				}
+	
+			}
+		
+			// flag the last set of details as processed
+			nw.witness.setProcessed(true);
+			groupWitnesses.add(nw.witness);
+			for (Box b: nw.newBoxes) {
+				b.setProcessed(true);
+			}
+		
+			//boardState.display("Processed witness " + nw.witness.display());
+		
+			//if we haven't compressed yet and we are still a small edge then don't compress
+			if (newProbs.size() < 100 && canDoDeadTileAnalysis) {
+				return newProbs;
+			}
+		
+			// about to compress the line
+			canDoDeadTileAnalysis = false;
+		
+			List<Box> boundaryBoxes = new ArrayList<>();
+			for (Box box: boxes) {
+				if (!mask[box.getUID()]) {  // only boxes in this group can be on the boundary
+					continue;
+				}
+				boolean notProcessed = false;
+				boolean processed = false;
+				for (Witness wit: box.getWitnesses()) {
+					if (wit.isProcessed()) {
+						processed = true;
+					} else {
+						notProcessed = true;
+					}
+					if (processed && notProcessed) {
+						//boardState.display("partially processed box " + box.getUID());
+						boundaryBoxes.add(box);
+						break;
+					}
+				}
+			}
+			//boardState.display("Boxes partially processed " + boundaryBoxes.size());
+		
+			MergeSorter sorter = new MergeSorter(boundaryBoxes);
+		
+			newProbs = crunchByMineCount(newProbs, sorter);
+
+			return newProbs;
+		
+		}
+	
+		// this is used to recursively place the missing Mines into the available boxes for the probability line
+		private List<ProbabilityLine> distributeMissingMines(ProbabilityLine pl, NextWitness nw, int missingMines, int index) {
+		
+			recursions++;
+			if (recursions % 10000 == 0) {
+				logger.log(Level.WARN, "Probability Engine recursion exceeding %d iterations", recursions);
+			}
+		
+			List<ProbabilityLine> result = new ArrayList<>();
+		
+			// if there is only one box left to put the missing mines we have reach this end of this branch of recursion
+			if (nw.newBoxes.size() - index == 1) {
+				// if there are too many for this box then the probability can't be valid
+				if (nw.newBoxes.get(index).getMaxMines() < missingMines) {
+					return result;
+				}
+				// if there are too few for this box then the probability can't be valid
+				if (nw.newBoxes.get(index).getMinMines() > missingMines) {
+					return result;
+				}
+				// if there are too many for this game then the probability can't be valid
+				if (pl.mineCount + missingMines > maxTotalMines) {
+					return result;
+				}			
+			
+				// otherwise place the mines in the probability line
+			
+				//pl.mineBoxCount[nw.newBoxes.get(index).getUID()] = BigInteger.valueOf(missingMines).multiply(pl.solutionCount);
+				//pl.mineCount = pl.mineCount + missingMines;
+				//result.add(pl);
+			
+				result.add(extendProbabilityLine(pl, nw.newBoxes.get(index), missingMines, true));
+				return result;
+			}
+		
+		
+			// this is the recursion
+			int maxToPlace = Math.min(nw.newBoxes.get(index).getMaxMines(), missingMines);
+		
+			for (int i=nw.newBoxes.get(index).getMinMines(); i <= maxToPlace; i++) {
+				ProbabilityLine npl = extendProbabilityLine(pl, nw.newBoxes.get(index), i, false);
+			
+				List<ProbabilityLine> extended = distributeMissingMines(npl, nw, missingMines - i, index + 1);
+				releaseUnlessReused(npl, extended);
+				result.addAll(extended);
+			}
+		
+			return result;
+		
+		}
+	
+		// a line can only be reused by the last box of a distribution, in which case it is the only line returned
+		private void releaseUnlessReused(ProbabilityLine pl, List<ProbabilityLine> extended) {
+			if (extended.isEmpty() || extended.get(0) != pl) {
+				releaseLine(pl);
+			}
+		}
+		
+		// the line is no longer needed, so keep it to be reused
+		private void releaseLine(ProbabilityLine pl) {
+			if (!pl.big) {
+				spareLines.push(pl);
+			}
+		}
+		
+		// get a line to extend, reusing a discarded one if there is one. The caller must set every value in the line's arrays.
+		private ProbabilityLine newLine(long solutionCount) {
+			
+			ProbabilityLine pl = spareLines.poll();
+			if (pl == null) {
+				return new ProbabilityLine(solutionCount);
+			}
+			
+			pl.solutionCount = solutionCount;
+			
+			return pl;
+		}
+		
+		// create a new probability line by taking the old and adding the mines to the new Box
+		private ProbabilityLine extendProbabilityLine(ProbabilityLine pl, Box newBox, int mines, boolean reuseLine) {
+		
+			if (pl.big) {
+				return extendBigProbabilityLine(pl, newBox, mines, reuseLine);
+			}
+		
+			int combination = SMALL_COMBINATIONS[newBox.getSquares().size()][mines];
+		
+			ProbabilityLine result;
+			if (combination == 1 && reuseLine) {
+				result = pl;
+				result.mineCount = result.mineCount + mines;
+			} else {
+				result = newLine(Math.multiplyExact(pl.solutionCount, (long) combination));
+			
+				result.mineCount = pl.mineCount + mines;
+				result.hash = pl.hash;
+			
+				// copy the hash values
+				System.arraycopy(pl.hashCount, 0, result.hashCount, 0, boxCount);
+			
+				// copy the probability array
+				if (combination == 1) {
+					System.arraycopy(pl.mineBoxCount, 0, result.mineBoxCount, 0, boxCount);
+				} else {
+					for (int i=0; i < boxCount; i++) {
+						result.mineBoxCount[i] = Math.multiplyExact(pl.mineBoxCount[i], (long) combination);
+					}
+				}
+			
+				System.arraycopy(pl.allocatedMines, 0, result.allocatedMines, 0, boxCount);
+			}
+
+			result.mineBoxCount[newBox.getUID()] = Math.multiplyExact((long) mines, result.solutionCount);
+			result.allocatedMines[newBox.getUID()] = mines;
+		
+			if (mines == 0) {
+				result.hashCount[newBox.getUID()] = -result.hash;   // treat no mines as -1 rather than zero
+			} else {
+				result.hashCount[newBox.getUID()] = Math.multiplyExact((long) mines, result.hash);
+			}				
+		
+			return result;
+		}
+	
+		// create a new probability line by taking the old and adding the mines to the new Box, using BigIntegers
+		private ProbabilityLine extendBigProbabilityLine(ProbabilityLine pl, Box newBox, int mines, boolean reuseLine) {
+		
+			int combination = SMALL_COMBINATIONS[newBox.getSquares().size()][mines];
+		
+			ProbabilityLine result;
+			if (combination == 1 && reuseLine) {
+				result = pl;
+				result.mineCount = result.mineCount + mines;
+			} else {
+				BigInteger newSolutionCount = pl.bigSolutionCount.multiply(BigInteger.valueOf(combination));
+			
+				result = new ProbabilityLine(newSolutionCount);
+			
+				result.mineCount = pl.mineCount + mines;
+				result.bigHash = pl.bigHash;
+			
+				// copy the hash values
+				System.arraycopy(pl.bigHashCount, 0, result.bigHashCount, 0, boxCount);
+			
+				// copy the probability array
+				if (combination == 1) {
+					System.arraycopy(pl.bigMineBoxCount, 0, result.bigMineBoxCount, 0, boxCount);
+				} else {
+					BigInteger multiplier = BigInteger.valueOf(combination);
+					for (int i=0; i < boxCount; i++) {
+						result.bigMineBoxCount[i] = pl.bigMineBoxCount[i].multiply(multiplier);
+					}
+				}
+			
+				result.allocatedMines = pl.allocatedMines.clone();
+			}
+
+
+			result.bigMineBoxCount[newBox.getUID()] = BigInteger.valueOf(mines).multiply(result.bigSolutionCount);
+			result.allocatedMines[newBox.getUID()] = mines;
+		
+			if (mines == 0) {
+				result.bigHashCount[newBox.getUID()] = result.bigHash.negate();   // treat no mines as -1 rather than zero
+			} else {
+				result.bigHashCount[newBox.getUID()] = BigInteger.valueOf(mines).multiply(result.bigHash);
+			}				
+		
+			return result;
+		}
+	
+		/*
+		// counts the number of mines already placed
+		private int countPlacedMines(ProbabilityLine pl, NextWitness nw) {
+		
+			int result = 0;
+		
+			for (Box b: nw.oldBoxes) {
+				result = result + pl.mineBoxCount[b.getUID()].intValue();
+			}
+		
+			return result;
+		}
+		*/
+	
+		// counts the number of mines already placed
+		private int countPlacedMines(ProbabilityLine pl, NextWitness nw) {
+		
+			if (!pl.big) {
+				long result = 0;
+			
+				for (Box b: nw.oldBoxes) {
+					result = Math.addExact(result, pl.mineBoxCount[b.getUID()]);
+				}
+			
+				if (result % pl.solutionCount != 0) {
+					logger.log(Level.WARN, "Min Box Count divide has non-zero remainder %d", result % pl.solutionCount);
+				}
+			
+				return (int) (result / pl.solutionCount);
+			}
+		
+			BigInteger result = BigInteger.ZERO;
+		
+			for (Box b: nw.oldBoxes) {
+				result = result.add(pl.bigMineBoxCount[b.getUID()]);
+			}
+		
+			BigInteger[] divide = result.divideAndRemainder(pl.bigSolutionCount);
+			if (divide[1].signum() != 0) {
+				logger.log(Level.WARN, "Min Box Count divide has non-zero remainder &d", divide[1]);
+			}
+		
+		
+			return divide[0].intValue();
+		}
+	
+		// look for the next witness to process, returns null when the group is complete
+		private NextWitness findNextWitness(NextWitness prevWitness) {
+		
+			int bestTodo = 99999;
+			Witness bestWitness = null;
+		
+			// and find a witness which is on the boundary of what has already been processed
+			for (Box b: boxes) {
+				if (mask[b.getUID()]) {
+					for (Witness w: b.getWitnesses()) {
+						if (!w.isProcessed()) {
+							int todo = 0;
+							for (Box b1: w.getBoxes()) {
+								if (!b1.isProcessed()) {
+									todo++;
+								}
+							}
+							if (todo == 0) {
+								return new NextWitness(w);
+							} else if (todo < bestTodo) {
+								bestTodo = todo;
+								bestWitness = w;
+							}
+						}
+					}
+				}
+			}
+		
+			if (bestWitness != null) {
+				return new NextWitness(bestWitness);
+			}
+		
+			// if we are down here then there is no witness which is on the boundary, so we have processed a complete set of independent witnesses 
+			return null;
+			
+		}
+		
+		// since we have calculated all the mines in an independent set of witnesses we can crunch them down and store them for later
+		private void crunchGroup() {
+			
+			// before we crunch everything down check for dead tiles
+			if (CHECK_FOR_DEAD_LOCATIONS) {
+				checkCandidateDeadLocations(canDoDeadTileAnalysis);
+				//checkEdgeIsDead();
+			}
+
+			// if we haven't compressed yet then do it now
+			if (canDoDeadTileAnalysis) {
+				MergeSorter sorter = new MergeSorter();
+				workingProbs = crunchByMineCount(workingProbs, sorter);
+			} else {
+				canDoDeadTileAnalysis = true;
+			}
+
+			/*
+			// display the probability lines
+			for (ProbabilityLine pl: workingProbs) {
+			
+				String display = "Mines=" + pl.mineCount + " Weight=" + pl.solutionCount;
+				for (int i=0; i < pl.allocatedMines.length; i++) {
+					//display = display + " "  + boxes.get(i).getSquares().size() + "(" + pl.allocatedMines[i] + ") ";
+				
+					String show;
+					if (this.mask[i]) {
+						show = pl.mineBoxCount[i].toString();
+					} else {
+						show = "-";
+					}
+				
+					display = display + " "  + boxes.get(i).getSquares().size() + "(" + show + ") ";
+				
+				}
+
+				boardState.getLogger().log(Level.INFO, display);
+
+			}		
+			*/
+		
+		}
+	
+		private void checkCandidateDeadLocations(boolean checkPossible) {
+		
+			boolean completeScan;
+			if (tilesOffEdge == 0) {
+				completeScan = true;   // this indicates that every box has been considered in one sweep (only 1 independent edge)
+				for (int i=0; i < mask.length; i++) {
+					if (!mask[i]) {
+						completeScan = false;
+						break;
+					}
+				}
+				if (completeScan) {
+					logger.log(Level.DEBUG, "This is a complete scan");
+				} else {
+					logger.log(Level.DEBUG, "This is not a complete scan");
+				}			
+			} else {
+				completeScan = false;
+				logger.log(Level.DEBUG, "This is not a complete scan because there are squares off the edge");
+			}
+
+		
+			for (DeadCandidate dc: candidates) {
+			
+				if (dc.isAlive) {  // if this location isn't dead then no need to check any more
+					continue;
+				}
+			
+				// only do the check if all the boxes have been analysed in this probability iteration
+				int boxesInScope = 0;
+				for (Box b: dc.goodBoxes) {
+					if (mask[b.getUID()]) {
+						boxesInScope++;
+					}
+				}
+				for (Box b: dc.badBoxes) {
+					if (mask[b.getUID()]) {
+						boxesInScope++;
+					}
+				}
+				if (boxesInScope == 0) {
+					continue;
+				} else if (boxesInScope != dc.goodBoxes.size() + dc.badBoxes.size()) {
+					logger.log(Level.DEBUG, "Tile %s has some boxes in scope and some out of scope so assumed alive", dc.candidate);
+					dc.isAlive = true;
+					continue;
+				}
+			
+				//if we can't do the check because the edge has been compressed mid process then assume alive
+				if (!checkPossible) {
+					logger.log(Level.DEBUG, "Tile %s was on compressed edge so assumed alive", dc.candidate);
+					dc.isAlive = true;
+					continue;
+				}
+			
+				boolean okay = true;
+				int mineCount = 0;
+				line: for (ProbabilityLine pl: workingProbs) {
+				
+					// ignore probability lines where the candidate is a mine
+					//if (pl.mineBoxCount[dc.myBox.getUID()].compareTo(BigInteger.valueOf(dc.myBox.getSquares().size())) == 0) {
+					if (pl.allocatedMines[dc.myBox.getUID()] == dc.myBox.getSquares().size()) {
+						logger.log(Level.DEBUG, "Location %s is a mine on this Probability line %d", dc.candidate, pl.allocatedMines[dc.myBox.getUID()]);
+						mineCount++;
+						continue line;
+					} else {
+						logger.log(Level.DEBUG, "Location %s is not a mine on this Probability line %d", dc.candidate, pl.allocatedMines[dc.myBox.getUID()]);
+					}
+				
+					if (completeScan && pl.mineCount != minesLeft) {
+						continue;
+					}				
+				
+					// all the bad boxes must be zero
+					for (Box b: dc.badBoxes) {
+					
+	                    int requiredMines;
+	                    if (b.getUID() == dc.myBox.getUID()) {
+	                        requiredMines = b.getSquares().size() - 1;
+	                    } else {
+	                        requiredMines = b.getSquares().size();
+	                    }
+					
+						if (!pl.isEmptyOrHolds(b.getUID(), requiredMines)) {
+							logger.log(Level.DEBUG, "Tile %s is not dead because a bad box is neither empty nor full of mines", dc.candidate);
+							okay = false;
+							break line;
+						}
+					}
+				
+					//BigInteger tally = BigInteger.ZERO;
+					int tally = 0;
+					// the number of mines in the good boxes must always be the same
+					for (Box b: dc.goodBoxes) {
+						//tally = tally.add(pl.mineBoxCount[b.getUID()]);
+						tally = tally + pl.allocatedMines[b.getUID()];
+					}
+					//boardState.display("Location " + dc.candidate.display() + " has mine tally " + tally);
+					if (dc.firstCheck) {
+						dc.total = tally;
+						dc.firstCheck = false;
+					} else {
+						if (dc.total != tally) {
+							logger.log(Level.DEBUG, "Tile %s is not dead because the sum of mines in good boxes is not constant. Was %d now %d. Mines in probability line %d", dc.candidate, dc.total, tally, pl.mineCount);
+							okay = false;
+							break;
+						}
+					}
+				}
+			
+				// if a check failed or this tile is a mine for every solution then it is alive
+				if (!okay || mineCount == this.workingProbs.size()) {
+					dc.isAlive = true;
+				} else {
+					// add the dead locations we found 
+					deadFound.add(dc.candidate);
+					//logger.log(Level.INFO, "%s is dead", dc.candidate);
+				}
+			
+			}
+		
+		}
+
+		// an edge is isolated if every tile on it is completely surrounded by boxes also on the same edge 
+		// (we have already established this area has a fixed number of mines)
+		private boolean checkEdgeIsIsolated(boolean equalMines) {
+		
+			Set<Location> edgeTiles = new HashSet<>();
+			Set<Location> edgeWitnesses = new HashSet<>();
+		
+			boolean everything = true;
+		
+			// load each tile on this edge into a set
+	        for (int i = 0; i < this.mask.length; i++) {
+	            if (this.mask[i]) {  
+	            	edgeTiles.addAll(boxes.get(i).getSquares());
+	            	edgeWitnesses.addAll(boxes.get(i).getWitnesses());
+	             } else {
+	            	everything = false;
+	            }
+	        }
+
+	        // if this edge is everything then it isn't an isolated edge  - this is wrong because it doesn't allow for off edge tiles
+	        //if (everything) {
+	        //	logger.log(Level.DEBUG, "Not enclosed because the edge is everything");
+	        //	return false;
+	        //}
+        
+        
+			// check whether every tile adjacent to the tiles on the edge is itself on the edge
+	        for (int i = 0; i < this.mask.length; i++) {
+	            if (this.mask[i]) {   
+	            	for (Square tile: boxes.get(i).getSquares()) {
+	            		if (!edgeTiles.containsAll(boardState.getAdjacentUnrevealedSquares(tile))) {
+	            			logger.log(Level.DEBUG, "Not enclosed because a tile's adjacent tiles isn't on the edge: %s", tile);
+	            			return false;
+	            		}
+	            	}
+	            }
+	        }
+
+	        if (equalMines) {
+	        	logger.log(Level.INFO, "Enclosed Edge with equal mines found");
+	        } else {
+	        	logger.log(Level.INFO, "Enclosed Edge with unequal mines found");
+	        	return true;
+	        }
+
+	        // an enclosed edge with a known number of mines can be solved independently from the main board
+        
+	        List<Location> tiles = new ArrayList<>(edgeTiles);
+	        List<Location> witnesses = new ArrayList<>(edgeWitnesses);
+	        int mines = workingProbs.get(0).mineCount;
+        
+	        // build a web of the isolated edge and use it to build a brute force
+	        WitnessWeb isolatedEdge = new WitnessWeb(boardState, witnesses, tiles);
+	        BruteForce bruteForce = new BruteForce(boardState.getSolver(), boardState, isolatedEdge, mines, boardState.getSolver().preferences.getBruteForceMaxIterations(), 
+	        		boardState.getSolver().preferences.getBruteForceMaxSolutions(), "Isolated Edge");
+        
+	        isolatedFound.add(bruteForce);
+        
+			return true;
+		}
+	
+	}
+	
+	// this combines newly generated probabilities with ones we have already stored from other independent sets of witnesses
+	private void storeProbabilities(List<ProbabilityLine> crunched) {
+		
+		//solver.display("New data has " + crunched.size() + " entries");
+		
+		// combine using longs unless either side has already overflowed
+		boolean big = (!crunched.isEmpty() && crunched.get(0).big) || (!heldProbs.isEmpty() && heldProbs.get(0).big);
+		
+		List<ProbabilityLine> result = null;
+		if (!big) {
+			try {
+				result = combineWithHeld(crunched);
+			} catch (ArithmeticException e) {
+				logger.log(Level.INFO, "Held probabilities overflowed a long, switching to BigIntegers");
+			}
+		}
+		if (result == null) {
+			result = combineWithHeldBig(crunched);
+		}
+		
+		heldProbs = result;
+
+		/*
+		for (Box b: boxes) {
+			System.out.print(b.getSquares().size() + " ");
+		}
+		System.out.println("");
+		for (ProbabilityLine pl: heldProbs) {
+			System.out.print("Mines = " + pl.mineCount + " solutions = " + pl.solutionCount + " boxes: ");
+			for (int i=0; i < pl.mineBoxCount.length; i++) {
+				System.out.print(" " + pl.mineBoxCount[i]);
+			}
+			System.out.println("");
+		}
+		*/
+		
+		
+	}
+	
+	// combine the new lines with the held lines and return one line per mine count, throws an ArithmeticException if a long overflows
+	private List<ProbabilityLine> combineWithHeld(List<ProbabilityLine> crunched) {
+		
+		List<ProbabilityLine> result = new ArrayList<>(); 
+		
+		for (ProbabilityLine pl: crunched) {
+			
+			for (ProbabilityLine epl: heldProbs) {
+
+				if (pl.mineCount + epl.mineCount <= maxTotalMines) {
 					
-					BigInteger tally = b.getTally().add(contribution);
-					b.setTally(tally);
+					ProbabilityLine npl = new ProbabilityLine(Math.multiplyExact(pl.solutionCount, epl.solutionCount));
+					npl.mineCount = pl.mineCount + epl.mineCount;
+					npl.hash = Math.addExact(epl.hash, pl.hash);
+					
+					for (int i=0; i < boxCount; i++) {
+						
+						long w1 = Math.multiplyExact(pl.mineBoxCount[i], epl.solutionCount);
+						long w2 = Math.multiplyExact(epl.mineBoxCount[i], pl.solutionCount);
+						npl.mineBoxCount[i] = Math.addExact(w1, w2);
+						
+						npl.hashCount[i] = Math.addExact(epl.hashCount[i], pl.hashCount[i]);
 
+					}
+					result.add(npl);
+					
 				}
 				
-				for (int i=0; i < hashTally.length; i++) {
-					hashTally[i] = hashTally[i].add(pl.hashCount[i]);
-				}				
 			}
+			
+		}
+	
+		// sort into mine order 
+		Collections.sort(result);
+		
+		List<ProbabilityLine> held = new ArrayList<>();
+		
+		// if result is empty this is an impossible position
+		if (result.isEmpty()) {
+			return held;
+		}
+		
+		// and combine them into a single probability line for each mine count
+		int mc = result.get(0).mineCount;
+		ProbabilityLine npl = new ProbabilityLine(0L);
+		npl.mineCount = mc;
+		
+		for (ProbabilityLine pl: result) {
+			if (pl.mineCount != mc) {
+				held.add(npl);
+				mc = pl.mineCount;
+				npl = new ProbabilityLine(0L);
+				npl.mineCount = mc;
+			}
+			npl.solutionCount = Math.addExact(npl.solutionCount, pl.solutionCount);
+			npl.hash = Math.addExact(npl.hash, pl.hash);
+			
+			for (int i = 0; i < boxCount; i++) {
+				npl.mineBoxCount[i] = Math.addExact(npl.mineBoxCount[i], pl.mineBoxCount[i]);
+				npl.hashCount[i] = Math.addExact(npl.hashCount[i], pl.hashCount[i]);
+			}
+		}
 
-		}		
+		held.add(npl);
 		
-		logger.log(Level.INFO, "Total Candidate solutions found %d", totalTally);
+		return held;
+	}
+	
+	// combine the new lines with the held lines and return one line per mine count, either side can be using longs
+	private List<ProbabilityLine> combineWithHeldBig(List<ProbabilityLine> crunched) {
 		
-		for (Box b: this.boxes) {
-			if (totalTally.signum() != 0) {
-				if (b.getTally().compareTo(totalTally) == 0) {  // a mine
-					b.setSafety(BigDecimal.ZERO);
-					for (Square squ: b.getSquares()) {  // add the squares in the box to the list of mines
-						mines.add(squ);
-						deadLocations = deadLocations.remove(squ);  // a definite mine can't be dead
-					}					
-				} else if (b.getTally().signum() == 0) {  // safe
-					b.setSafety(BigDecimal.ONE);
-					allDead = false;
-					//for (Square squ: b.getSquares()) {
-					//	deadLocations = deadLocations.remove(squ);  // a safe tile can't be dead
-					//}					
-				} else {
-					b.setSafety(BigDecimal.ONE.subtract(new BigDecimal(b.getTally()).divide(new BigDecimal(totalTally), Solver.DP, RoundingMode.HALF_UP)));
+		List<ProbabilityLine> result = new ArrayList<>(); 
+		
+		for (ProbabilityLine pl: crunched) {
+			
+			BigInteger plSolutionCount = pl.getBigSolutionCount();
+			
+			for (ProbabilityLine epl: heldProbs) {
+
+				if (pl.mineCount + epl.mineCount <= maxTotalMines) {
+					
+					BigInteger eplSolutionCount = epl.getBigSolutionCount();
+					
+					ProbabilityLine npl = new ProbabilityLine(plSolutionCount.multiply(eplSolutionCount));
+					npl.mineCount = pl.mineCount + epl.mineCount;
+					npl.bigHash = epl.getBigHash().add(pl.getBigHash());
+					
+					for (int i=0; i < boxCount; i++) {
+						
+						BigInteger w1 = pl.getBigMineBoxCount(i).multiply(eplSolutionCount);
+						BigInteger w2 = epl.getBigMineBoxCount(i).multiply(plSolutionCount);
+						npl.bigMineBoxCount[i] = w1.add(w2);
+						
+						npl.bigHashCount[i] = epl.getBigHashCount(i).add(pl.getBigHashCount(i));
+
+					}
+					result.add(npl);
+					
 				}
 				
-			} else {
-				b.setSafety(BigDecimal.ZERO);
 			}
+			
 		}
 	
-		// avoid divide by zero
-		if (tilesOffEdge != 0 && totalTally.signum() != 0) {
-			offEdgeTally = outsideTally.divide(BigInteger.valueOf(tilesOffEdge));
-			offEdgeSafety = BigDecimal.ONE.subtract(new BigDecimal(outsideTally).divide(new BigDecimal(totalTally), Solver.DP, RoundingMode.HALF_UP).divide(new BigDecimal(tilesOffEdge), Solver.DP, RoundingMode.HALF_UP));
-		} else {
-			offEdgeSafety = BigDecimal.ZERO;
-			offEdgeTally = BigInteger.ZERO;
+		// sort into mine order 
+		Collections.sort(result);
+		
+		List<ProbabilityLine> held = new ArrayList<>();
+		
+		// if result is empty this is an impossible position
+		if (result.isEmpty()) {
+			return held;
+		}
+		
+		// and combine them into a single probability line for each mine count
+		int mc = result.get(0).mineCount;
+		ProbabilityLine npl = new ProbabilityLine(BigInteger.ZERO);
+		npl.mineCount = mc;
+		
+		for (ProbabilityLine pl: result) {
+			if (pl.mineCount != mc) {
+				held.add(npl);
+				mc = pl.mineCount;
+				npl = new ProbabilityLine(BigInteger.ZERO);
+				npl.mineCount = mc;
+			}
+			npl.bigSolutionCount = npl.bigSolutionCount.add(pl.bigSolutionCount);
+			npl.bigHash = npl.bigHash.add(pl.bigHash);
+			
+			for (int i = 0; i < boxCount; i++) {
+				npl.bigMineBoxCount[i] = npl.bigMineBoxCount[i].add(pl.bigMineBoxCount[i]);
+				npl.bigHashCount[i] = npl.bigHashCount[i].add(pl.bigHashCount[i]);
+			}
 		}
-	
-		finalSolutionsCount = totalTally;
 
-		// determine how many safe tiles there are
-		if (totalTally.signum() > 0) {
+		held.add(npl);
+		
+		return held;
+	}
+	
+	// here we expand the localised solution to one across the whole board and
+	// sum them together to create a definitive probability for each box
+	private void calculateBoxProbabilities() {
+		
+		// the log-space calculation leaves it to the exact calculation when it can't tell the safeties apart
+		boolean logSpace = settings.isLogSpaceProbability() && calculateBoxSafetiesLogSpace();
+		if (!logSpace) {
+			calculateBoxSafetiesExact();
+		}
+		
+		// determine how many safe tiles there are, the log-space tallies aren't calculated unless they are asked for but the safety is only one when the box is safe
+		if (finalSolutionsCount.signum() > 0) {
 			
 			for (Box b: this.boxes) {
-				if (b.getTally().signum() == 0) {
+				boolean safe;
+				if (logSpace) {
+					safe = (b.getSafety().compareTo(BigDecimal.ONE) == 0);
+				} else {
+					safe = (b.getTally().signum() == 0);
+				}
+				if (safe) {
 					 clearCount = clearCount + b.getSquares().size();
 					 
 					 for (Square sq: b.getSquares()) {
@@ -713,338 +1954,435 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		
 	}
 	
-	
-	private void addLinkedLocation(List<LinkedLocation> list, Box box, Box linkTo) {
+	/**
+	 * Calculates the safety of each box and off the edge using doubles, rather than adding up the box tallies and dividing them.
+	 * The ways to place the mines off the edge are taken into log-space and scaled by the largest of them, so the tallies are 
+	 * added up as ordinary doubles without overflowing.  The solution counts are still exact and the exact tally of a box is 
+	 * calculated the first time it is asked for.  Returns false without changing anything if two of the safeties are too close to be 
+	 * ordered within the error of the calculation and aren't exactly the same, so the exact calculation is needed.
+	 */
+	private boolean calculateBoxSafetiesLogSpace() {
 		
-		top:for (Square s: box.getSquares()) {
+		List<ProbabilityLine> lines = new ArrayList<>();
+		List<BigInteger> mults = new ArrayList<>();
+		
+		BigInteger totalTally = BigInteger.ZERO;
+		BigInteger outsideTally = BigInteger.ZERO;
+		
+		double[] logMults = new double[heldProbs.size()];
+		double maxLogMult = Double.NEGATIVE_INFINITY;
+		
+		BigInteger[] weights = offEdgeWeights();
+		for (ProbabilityLine pl: heldProbs) {
 			
-			for (LinkedLocation ll: list) {
-				if (s.equals(ll)) {
-					ll.incrementLinks(linkTo.getSquares());
-					continue top;
+			if (pl.mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
+				
+				BigInteger solutionCount = pl.getBigSolutionCount();
+				
+				int currentMinesToPlace = minesLeft - pl.mineCount; // mines left - mines on the edge
+				BigInteger mult = weights[currentMinesToPlace];
+				
+				outsideTally = outsideTally.add(mult.multiply(BigInteger.valueOf(currentMinesToPlace)).multiply(solutionCount));
+				totalTally = totalTally.add(mult.multiply(solutionCount));
+				
+				if (mult.signum() == 0) {
+					logMults[lines.size()] = Double.NEGATIVE_INFINITY;
+				} else {
+					logMults[lines.size()] = log(mult);
+					maxLogMult = Math.max(maxLogMult, logMults[lines.size()]);
 				}
-			}		
-			
-			list.add(new LinkedLocation(s.x, s.y, linkTo.getSquares()));
+				
+				lines.add(pl);
+				mults.add(mult);
+			}
 		}
 		
-	}
-	
-	private List<ProbabilityLine> mergeProbabilities(NextWitness nw) {
+		if (totalTally.signum() == 0) {
+			return false;
+		}
 		
-		List<ProbabilityLine> newProbs = new ArrayList<>();
+		double[] tally = new double[boxes.size()];
+		boolean[] safe = new boolean[boxes.size()];
+		boolean[] mine = new boolean[boxes.size()];
+		Arrays.fill(safe, true);
+		Arrays.fill(mine, true);
 		
-		for (ProbabilityLine pl: workingProbs) {
+		double total = 0;
+		double outside = 0;
+		for (int j=0; j < lines.size(); j++) {
 			
-			int missingMines = nw.witness.getMines() - countPlacedMines(pl, nw);
+			if (logMults[j] == Double.NEGATIVE_INFINITY) {
+				continue;
+			}
 			
-			if (missingMines < 0) {
-				// too many mines placed around this witness previously, so this probability can't be valid
-			} else if (missingMines == 0) {
-				newProbs.add(pl);   // witness already exactly satisfied, so nothing to do
-			} else if (nw.newBoxes.isEmpty()) {
-				// nowhere to put the new mines, so this probability can't be valid
-			} else {
-				newProbs.addAll(distributeMissingMines(pl, nw, missingMines, 0));
+			ProbabilityLine pl = lines.get(j);
+			double scale = Math.exp(logMults[j] - maxLogMult);
+			
+			total = total + scale * pl.getSolutionCountValue();
+			outside = outside + scale * pl.getSolutionCountValue() * (minesLeft - pl.mineCount);
+			
+			for (int i=0; i < boxes.size(); i++) {
+				Box b = boxes.get(i);
+				double count = pl.getMineBoxCountValue(b.getUID());
+				if (count != 0) {
+					safe[i] = false;
+					tally[i] = tally[i] + scale * count;
+				}
+				// a mine in every solution of every line
+				if (mine[i] && !pl.isAllMines(b.getUID(), b.getSquares().size())) {
+					mine[i] = false;
+				}
 			}
-	
 		}
 		
-		// flag the last set of details as processed
-		nw.witness.setProcessed(true);
-		for (Box b: nw.newBoxes) {
-			b.setProcessed(true);
+		// counts too big for a double are left to the exact calculation
+		if (!(total > 0) || Double.isInfinite(total) || Double.isInfinite(outside)) {
+			return false;
 		}
 		
-		//boardState.display("Processed witness " + nw.witness.display());
-		
-		//if we haven't compressed yet and we are still a small edge then don't compress
-		if (newProbs.size() < 100 && canDoDeadTileAnalysis) {
-			return newProbs;
+		// the error in each term grows with the size of the logs it was scaled by, and the error of the sum with the number of terms
+		double error = LOG_SPACE_ERROR * (lines.size() + 4) * Math.ulp(Math.max(1.0, Math.abs(maxLogMult)));
+		
+		// the chance of a mine in each box and then off the edge, which is the last one
+		double[] mineChance = new double[boxes.size() + 1];
+		boolean[] certain = new boolean[boxes.size() + 1];
+		for (int i=0; i < boxes.size(); i++) {
+			if (mine[i]) {
+				mineChance[i] = 1;
+				certain[i] = true;
+			} else if (safe[i]) {
+				mineChance[i] = 0;
+				certain[i] = true;
+			} else {
+				mineChance[i] = between(tally[i] / (boxes.get(i).getSquares().size() * total));
+			}
+		}
+		int offEdge = boxes.size();
+		if (tilesOffEdge == 0) {
+			mineChance[offEdge] = 1;
+			certain[offEdge] = true;
+		} else if (outsideTally.signum() == 0) {
+			mineChance[offEdge] = 0;
+			certain[offEdge] = true;
+		} else if (outsideTally.compareTo(totalTally.multiply(BigInteger.valueOf(tilesOffEdge))) == 0) {
+			mineChance[offEdge] = 1;
+			certain[offEdge] = true;
+		} else {
+			mineChance[offEdge] = between(outside / (tilesOffEdge * total));
 		}
 		
-		// about to compress the line
-		canDoDeadTileAnalysis = false;
-		
-		List<Box> boundaryBoxes = new ArrayList<>();
-		for (Box box: boxes) {
-			boolean notProcessed = false;
-			boolean processed = false;
-			for (Witness wit: box.getWitnesses()) {
-				if (wit.isProcessed()) {
-					processed = true;
+		// check the chances which are too close to order are exactly the same, certain chances are always exact
+		Integer[] order = new Integer[mineChance.length];
+		for (int i=0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Double.compare(mineChance[o1], mineChance[o2]);
+			}
+		});
+		
+		for (int i=1; i < order.length; i++) {
+			int a = order[i - 1];
+			int b = order[i];
+			if (!certain[a] && !certain[b] && mineChance[b] - mineChance[a] <= 2 * error) {
+				// the chances are tally / (divisor * total)
+				BigInteger tallyA = exactTally(a, lines, mults, outsideTally);
+				BigInteger tallyB = exactTally(b, lines, mults, outsideTally);
+				if (tallyA.multiply(BigInteger.valueOf(divisor(b))).compareTo(tallyB.multiply(BigInteger.valueOf(divisor(a)))) == 0) {
+					mineChance[b] = mineChance[a];
 				} else {
-					notProcessed = true;
-				}
-				if (processed && notProcessed) {
-					//boardState.display("partially processed box " + box.getUID());
-					boundaryBoxes.add(box);
-					break;
+					logger.log(Level.INFO, "Log-space probabilities %f and %f can't be ordered, so using exact probabilities", mineChance[a], mineChance[b]);
+					return false;
 				}
 			}
 		}
-		//boardState.display("Boxes partially processed " + boundaryBoxes.size());
-		
-		MergeSorter sorter = new MergeSorter(boundaryBoxes);
-		
-		newProbs = crunchByMineCount(newProbs, sorter);
-
-		return newProbs;
 		
-	}
-	
-	// this is used to recursively place the missing Mines into the available boxes for the probability line
-	private List<ProbabilityLine> distributeMissingMines(ProbabilityLine pl, NextWitness nw, int missingMines, int index) {
-		
-		recursions++;
-		if (recursions % 10000 == 0) {
-			logger.log(Level.WARN, "Probability Engine recursion exceeding %d iterations", recursions);
+		for (int i=0; i < hashTally.length; i++) {
+			hashTally[i] =  BigInteger.ZERO;
 		}
-		
-		List<ProbabilityLine> result = new ArrayList<>();
-		
-		// if there is only one box left to put the missing mines we have reach this end of this branch of recursion
-		if (nw.newBoxes.size() - index == 1) {
-			// if there are too many for this box then the probability can't be valid
-			if (nw.newBoxes.get(index).getMaxMines() < missingMines) {
-				return result;
+		for (ProbabilityLine pl: lines) {
+			if (mineCounts.put(pl.mineCount, pl.getBigSolutionCount()) != null) {
+				logger.log(Level.ERROR, "Duplicate mines in probability Engine (merging probability lines not working?)");
 			}
-			// if there are too few for this box then the probability can't be valid
-			if (nw.newBoxes.get(index).getMinMines() > missingMines) {
-				return result;
+			for (int i=0; i < hashTally.length; i++) {
+				hashTally[i] = hashTally[i].add(pl.getBigHashCount(i));
 			}
-			// if there are too many for this game then the probability can't be valid
-			if (pl.mineCount + missingMines > maxTotalMines) {
-				return result;
-			}			
-			
-			// otherwise place the mines in the probability line
+		}
+		
+		logger.log(Level.INFO, "Total Candidate solutions found %d", totalTally);
+		
+		for (int i=0; i < boxes.size(); i++) {
+			Box b = boxes.get(i);
 			
-			//pl.mineBoxCount[nw.newBoxes.get(index).getUID()] = BigInteger.valueOf(missingMines).multiply(pl.solutionCount);
-			//pl.mineCount = pl.mineCount + missingMines;
-			//result.add(pl);
+			// the helpers which use the tallies only look at a few boxes, so the rest are never calculated
+			if (mine[i]) {
+				b.setTally(totalTally);
+			} else if (safe[i]) {
+				b.setTally(BigInteger.ZERO);
+			} else {
+				final int index = i;
+				b.setTally(new Box.TallyCalculator() {
+					@Override
+					public BigInteger calculate() {
+						return boxTally(index, lines, mults);
+					}
+				});
+			}
 			
-			result.add(extendProbabilityLine(pl, nw.newBoxes.get(index), missingMines, true));
-			return result;
+			if (mine[i]) {
+				b.setSafety(BigDecimal.ZERO);
+				for (Square squ: b.getSquares()) {  // add the squares in the box to the list of mines
+					mines.add(squ);
+					deadLocations = deadLocations.remove(squ);  // a definite mine can't be dead
+				}					
+			} else if (safe[i]) {
+				b.setSafety(BigDecimal.ONE);
+				allDead = false;
+			} else {
+				b.setSafety(BigDecimal.ONE.subtract(BigDecimal.valueOf(mineChance[i])));
+			}
+		}
+		
+		if (tilesOffEdge != 0) {
+			offEdgeTally = outsideTally.divide(BigInteger.valueOf(tilesOffEdge));
+			offEdgeSafety = BigDecimal.ONE.subtract(BigDecimal.valueOf(mineChance[offEdge]));
+		} else {
+			offEdgeSafety = BigDecimal.ZERO;
+			offEdgeTally = BigInteger.ZERO;
 		}
 		
+		finalSolutionsCount = totalTally;
 		
-		// this is the recursion
-		int maxToPlace = Math.min(nw.newBoxes.get(index).getMaxMines(), missingMines);
+		return true;
+	}
+	
+	/**
+	 * The ways the mines left can be placed off the edge, indexed by the number of mines to place, for the mine counts of the probability lines.
+	 * These come from the binomial cache's column for the tiles off the edge, which is shared with the other engines.
+	 */
+	private BigInteger[] offEdgeWeights() {
 		
-		for (int i=nw.newBoxes.get(index).getMinMines(); i <= maxToPlace; i++) {
-			ProbabilityLine npl = extendProbabilityLine(pl, nw.newBoxes.get(index), i, false);
-			
-			result.addAll(distributeMissingMines(npl, nw, missingMines - i, index + 1));
+		int minMinesToPlace = Integer.MAX_VALUE;
+		int maxMinesToPlace = -1;
+		for (ProbabilityLine pl: heldProbs) {
+			if (pl.mineCount >= minTotalMines) {
+				minMinesToPlace = Math.min(minMinesToPlace, minesLeft - pl.mineCount);
+				maxMinesToPlace = Math.max(maxMinesToPlace, minesLeft - pl.mineCount);
+			}
 		}
 		
-		return result;
-		
-	}
-	
-	// create a new probability line by taking the old and adding the mines to the new Box
-	private ProbabilityLine extendProbabilityLine(ProbabilityLine pl, Box newBox, int mines, boolean reuseLine) {
+		BigInteger[] weights = new BigInteger[maxMinesToPlace + 1];
+		if (maxMinesToPlace < 0) {
+			return weights;
+		}
 		
-		int combination = SMALL_COMBINATIONS[newBox.getSquares().size()][mines];
+		if (biCache != null) {
+			BigInteger[] column = biCache.getColumn(tilesOffEdge, minMinesToPlace, maxMinesToPlace);
+			System.arraycopy(column, 0, weights, minMinesToPlace, column.length);
+			return weights;
+		}
 		
-		ProbabilityLine result;
-		if (combination == 1 && reuseLine) {
-			result = pl;
-			result.mineCount = result.mineCount + mines;
-		} else {
-			BigInteger newSolutionCount = pl.solutionCount.multiply(BigInteger.valueOf(combination));
-			
-			result = new ProbabilityLine(newSolutionCount);
-			
-			result.mineCount = pl.mineCount + mines;
-			result.hash = pl.hash;
-			
-			// copy the hash values
-			System.arraycopy(pl.hashCount, 0, result.hashCount, 0, pl.mineBoxCount.length);
+		// without a cache the previous value is used to calculate the next when they are next to each other
+		BigInteger mult = null;
+		int prevMinesToPlace = 0;
+		for (ProbabilityLine pl: heldProbs) {
 			
-			// copy the probability array
-			if (combination == 1) {
-				System.arraycopy(pl.mineBoxCount, 0, result.mineBoxCount, 0, pl.mineBoxCount.length);
-			} else {
-				BigInteger multiplier = BigInteger.valueOf(combination);
-				for (int i=0; i < pl.mineBoxCount.length; i++) {
-					result.mineBoxCount[i] = pl.mineBoxCount[i].multiply(multiplier);
+			if (pl.mineCount >= minTotalMines) {
+				
+				int currentMinesToPlace = minesLeft - pl.mineCount;
+				
+				if (mult == null || tilesOffEdge <= Solver.BINOMIAL_CACHE_LIMIT) {
+					mult = Solver.combination(currentMinesToPlace, tilesOffEdge);
+					
+				} else if (currentMinesToPlace == prevMinesToPlace - 1) {
+					mult = mult.multiply(BigInteger.valueOf(prevMinesToPlace)).divide(BigInteger.valueOf(tilesOffEdge - prevMinesToPlace + 1));
+
+				} else {
+					mult = Solver.combination(currentMinesToPlace, tilesOffEdge);
 				}
+				
+				weights[currentMinesToPlace] = mult;
+				prevMinesToPlace = currentMinesToPlace;
 			}
-			
-			result.allocatedMines = pl.allocatedMines.clone();
 		}
-
-
-		result.mineBoxCount[newBox.getUID()] = BigInteger.valueOf(mines).multiply(result.solutionCount);
-		result.allocatedMines[newBox.getUID()] = mines;
 		
-		if (mines == 0) {
-			result.hashCount[newBox.getUID()] = result.hash.negate();   // treat no mines as -1 rather than zero
-		} else {
-			result.hashCount[newBox.getUID()] = BigInteger.valueOf(mines).multiply(result.hash);
-		}				
-		
-		return result;
+		return weights;
 	}
 	
-	/*
-	// counts the number of mines already placed
-	private int countPlacedMines(ProbabilityLine pl, NextWitness nw) {
+	// the exact tally of a box, or off the edge when the index is past the boxes
+	private BigInteger exactTally(int index, List<ProbabilityLine> lines, List<BigInteger> mults, BigInteger outsideTally) {
 		
-		int result = 0;
+		if (index == boxes.size()) {
+			return outsideTally;
+		}
 		
-		for (Box b: nw.oldBoxes) {
-			result = result + pl.mineBoxCount[b.getUID()].intValue();
+		BigInteger tally = BigInteger.ZERO;
+		for (int i=0; i < lines.size(); i++) {
+			tally = tally.add(mults.get(i).multiply(lines.get(i).getBigMineBoxCount(boxes.get(index).getUID())));
 		}
 		
-		return result;
+		return tally;
 	}
-	*/
 	
-	// counts the number of mines already placed
-	private int countPlacedMines(ProbabilityLine pl, NextWitness nw) {
-		
-		BigInteger result = BigInteger.ZERO;
+	// the tally of a box as the exact calculation builds it, each line's contribution is divided by the size of the box
+	private BigInteger boxTally(int index, List<ProbabilityLine> lines, List<BigInteger> mults) {
 		
-		for (Box b: nw.oldBoxes) {
-			result = result.add(pl.mineBoxCount[b.getUID()]);
-		}
+		Box b = boxes.get(index);
+		BigInteger size = BigInteger.valueOf(b.getSquares().size());
 		
-		BigInteger[] divide = result.divideAndRemainder(pl.solutionCount);
-		if (divide[1].signum() != 0) {
-			logger.log(Level.WARN, "Min Box Count divide has non-zero remainder &d", divide[1]);
+		BigInteger tally = BigInteger.ZERO;
+		for (int i=0; i < lines.size(); i++) {
+			tally = tally.add(mults.get(i).multiply(lines.get(i).getBigMineBoxCount(b.getUID())).divide(size));
 		}
 		
-		
-		return divide[0].intValue();
+		return tally;
 	}
 	
-	// return any witness which hasn't been processed
-	private NextWitness findFirstWitness() {
-		
-		for (Witness w: witnesses) {
-			if (!w.isProcessed()) {
-				return new NextWitness(w);
-			}
+	// the number of tiles the tally is spread over
+	private int divisor(int index) {
+		if (index == boxes.size()) {
+			return tilesOffEdge;
+		} else {
+			return boxes.get(index).getSquares().size();
 		}
-		
-		// if we are here all witness have been processed
-		return null;
-
 	}
 	
+	// a chance which isn't certain is kept strictly between 0 and 1
+	private static double between(double chance) {
+		return Math.min(Math.nextDown(1.0), Math.max(Double.MIN_VALUE, chance));
+	}
 	
-	// look for the next witness to process
-	private NextWitness findNextWitness(NextWitness prevWitness) {
-		
-		int bestTodo = 99999;
-		Witness bestWitness = null;
-		
-		// and find a witness which is on the boundary of what has already been processed
-		for (Box b: boxes) {
-			if (b.isProcessed()) {
-				for (Witness w: b.getWitnesses()) {
-					if (!w.isProcessed()) {
-						int todo = 0;
-						for (Box b1: w.getBoxes()) {
-							if (!b1.isProcessed()) {
-								todo++;
-							}
-						}
-						if (todo == 0) {
-							return new NextWitness(w);
-						} else if (todo < bestTodo) {
-							bestTodo = todo;
-							bestWitness = w;
-						}
-					}
-				}
-			}
-		}
+	private static double log(BigInteger value) {
+		int shift = Math.max(0, value.bitLength() - 62);
+		return Math.log(value.shiftRight(shift).doubleValue()) + shift * LOG_2;
+	}
+	
+	/**
+	 * Calculates the safety of each box and off the edge by dividing the exact tallies
+	 */
+	private void calculateBoxSafetiesExact() {
 		
-		if (bestWitness != null) {
-			return new NextWitness(bestWitness);
+		//BigInteger[] tally = new BigInteger[boxCount];
+		for (int i=0; i < hashTally.length; i++) {
+			//tally[i] = BigInteger.ZERO;
+			hashTally[i] =  BigInteger.ZERO;
 		}
+
+		// total game tally
+		BigInteger totalTally = BigInteger.ZERO;
 		
-		// if we are down here then there is no witness which is on the boundary, so we have processed a complete set of independent witnesses 
-		
-		independentGroups++;
-		
-		// since we have calculated all the mines in an independent set of witnesses we can crunch them down and store them for later
+		// outside a box tally
+		BigInteger outsideTally = BigInteger.ZERO;
 		
-		// before we crunch everything down check for dead tiles
-		if (CHECK_FOR_DEAD_LOCATIONS) {
-			checkCandidateDeadLocations(canDoDeadTileAnalysis);
-			//checkEdgeIsDead();
-		}
-
-		// if we haven't compressed yet then do it now
-		if (canDoDeadTileAnalysis) {
-			MergeSorter sorter = new MergeSorter();
-			workingProbs = crunchByMineCount(workingProbs, sorter);
-		} else {
-			canDoDeadTileAnalysis = true;
-		}
-
-		/*
-		// display the probability lines
-		for (ProbabilityLine pl: workingProbs) {
+		// calculate how many mines 
+		BigInteger[] weights = offEdgeWeights();
+		for (ProbabilityLine pl: heldProbs) {
 			
-			String display = "Mines=" + pl.mineCount + " Weight=" + pl.solutionCount;
-			for (int i=0; i < pl.allocatedMines.length; i++) {
-				//display = display + " "  + boxes.get(i).getSquares().size() + "(" + pl.allocatedMines[i] + ") ";
+			if (pl.mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
 				
-				String show;
-				if (this.mask[i]) {
-					show = pl.mineBoxCount[i].toString();
-				} else {
-					show = "-";
+				BigInteger solutionCount = pl.getBigSolutionCount();
+				
+				if (mineCounts.put(pl.mineCount, solutionCount) != null) {
+					logger.log(Level.ERROR, "Duplicate mines in probability Engine (merging probability lines not working?)");
 				}
 				
-				display = display + " "  + boxes.get(i).getSquares().size() + "(" + show + ") ";
+				int currentMinesToPlace = minesLeft - pl.mineCount; // mines left - mines on the edge
+				
+				BigInteger mult = weights[currentMinesToPlace];  //# of ways the rest of the board can be formed
 				
-			}
+				outsideTally = outsideTally.add(mult.multiply(BigInteger.valueOf(minesLeft - pl.mineCount)).multiply(solutionCount));
+				
+				// this is all the possible ways the mines can be placed across the whole game
+				totalTally = totalTally.add(mult.multiply(solutionCount));
+				
+				for (Box b: this.boxes) {
+					BigInteger contribution = mult.multiply(pl.getBigMineBoxCount(b.getUID())).divide(BigInteger.valueOf(b.getSquares().size()));
+					
+					BigInteger tally = b.getTally().add(contribution);
+					b.setTally(tally);
 
-			boardState.getLogger().log(Level.INFO, display);
+				}
+				
+				for (int i=0; i < hashTally.length; i++) {
+					hashTally[i] = hashTally[i].add(pl.getBigHashCount(i));
+				}				
+			}
 
 		}		
-		*/
 		
-		// get an unprocessed witness
-		NextWitness nw =  findFirstWitness();
+		logger.log(Level.INFO, "Total Candidate solutions found %d", totalTally);
 		
-		storeProbabilities();
+		for (Box b: this.boxes) {
+			if (totalTally.signum() != 0) {
+				if (b.getTally().compareTo(totalTally) == 0) {  // a mine
+					b.setSafety(BigDecimal.ZERO);
+					for (Square squ: b.getSquares()) {  // add the squares in the box to the list of mines
+						mines.add(squ);
+						deadLocations = deadLocations.remove(squ);  // a definite mine can't be dead
+					}					
+				} else if (b.getTally().signum() == 0) {  // safe
+					b.setSafety(BigDecimal.ONE);
+					allDead = false;
+					//for (Square squ: b.getSquares()) {
+					//	deadLocations = deadLocations.remove(squ);  // a safe tile can't be dead
+					//}					
+				} else {
+					b.setSafety(BigDecimal.ONE.subtract(new BigDecimal(b.getTally()).divide(new BigDecimal(totalTally), Solver.DP, RoundingMode.HALF_UP)));
+				}
+				
+			} else {
+				b.setSafety(BigDecimal.ZERO);
+			}
+		}
+	
+		// avoid divide by zero
+		if (tilesOffEdge != 0 && totalTally.signum() != 0) {
+			offEdgeTally = outsideTally.divide(BigInteger.valueOf(tilesOffEdge));
+			offEdgeSafety = BigDecimal.ONE.subtract(new BigDecimal(outsideTally).divide(new BigDecimal(totalTally), Solver.DP, RoundingMode.HALF_UP).divide(new BigDecimal(tilesOffEdge), Solver.DP, RoundingMode.HALF_UP));
+		} else {
+			offEdgeSafety = BigDecimal.ZERO;
+			offEdgeTally = BigInteger.ZERO;
+		}
+	
+		finalSolutionsCount = totalTally;
+
+	}
+	
+	
+	
+	private void addLinkedLocation(List<LinkedLocation> list, Box box, Box linkTo) {
 		
-		// reset the working array so we can start building up one for the new set of witnesses
-		workingProbs.clear();
-		workingProbs.add(new ProbabilityLine(BigInteger.ONE));
+		top:for (Square s: box.getSquares()) {
+			
+			for (LinkedLocation ll: list) {
+				if (s.equals(ll)) {
+					ll.incrementLinks(linkTo.getSquares());
+					continue top;
+				}
+			}		
+			
+			list.add(new LinkedLocation(s.x, s.y, linkTo.getSquares()));
+		}
 		
+	}
+	
+	// return any witness which hasn't been processed
+	private Witness findFirstWitness() {
 		
-		// count how many tiles where on this edge
-		int totalTiles = 0;
-		for (int i=0; i < mask.length; i++) {
-			if (mask[i]) {
-				Box b = this.boxes.get(i);
-				totalTiles = totalTiles + b.getSquares().size();
+		for (Witness w: witnesses) {
+			if (!w.isProcessed()) {
+				return w;
 			}
 		}
-		// and store that information in the box
-		for (int i=0; i < mask.length; i++) {
-			if (mask[i]) {
-				Box b = this.boxes.get(i);
-				b.setEdgeLength(totalTiles);
-			}
-		}		
 		
-		// reset the mask indicating that no boxes have been processed 
-		mask = new boolean[boxCount]; 
+		// if we are here all witness have been processed
+		return null;
 
-		// return the next witness to process
-		return nw;
-		
 	}
 	
+	
 	/**
 	 * How safe this location is
 	 */
@@ -1283,130 +2621,6 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	}
 	
 	
-	private void checkCandidateDeadLocations(boolean checkPossible) {
-		
-		boolean completeScan;
-		if (tilesOffEdge == 0) {
-			completeScan = true;   // this indicates that every box has been considered in one sweep (only 1 independent edge)
-			for (int i=0; i < mask.length; i++) {
-				if (!mask[i]) {
-					completeScan = false;
-					break;
-				}
-			}
-			if (completeScan) {
-				logger.log(Level.DEBUG, "This is a complete scan");
-			} else {
-				logger.log(Level.DEBUG, "This is not a complete scan");
-			}			
-		} else {
-			completeScan = false;
-			logger.log(Level.DEBUG, "This is not a complete scan because there are squares off the edge");
-		}
-
-		
-		for (DeadCandidate dc: deadCandidates) {
-			
-			if (dc.isAlive) {  // if this location isn't dead then no need to check any more
-				continue;
-			}
-			
-			// only do the check if all the boxes have been analysed in this probability iteration
-			int boxesInScope = 0;
-			for (Box b: dc.goodBoxes) {
-				if (mask[b.getUID()]) {
-					boxesInScope++;
-				}
-			}
-			for (Box b: dc.badBoxes) {
-				if (mask[b.getUID()]) {
-					boxesInScope++;
-				}
-			}
-			if (boxesInScope == 0) {
-				continue;
-			} else if (boxesInScope != dc.goodBoxes.size() + dc.badBoxes.size()) {
-				logger.log(Level.DEBUG, "Tile %s has some boxes in scope and some out of scope so assumed alive", dc.candidate);
-				dc.isAlive = true;
-				continue;
-			}
-			
-			//if we can't do the check because the edge has been compressed mid process then assume alive
-			if (!checkPossible) {
-				logger.log(Level.DEBUG, "Tile %s was on compressed edge so assumed alive", dc.candidate);
-				dc.isAlive = true;
-				continue;
-			}
-			
-			boolean okay = true;
-			int mineCount = 0;
-			line: for (ProbabilityLine pl: workingProbs) {
-				
-				// ignore probability lines where the candidate is a mine
-				//if (pl.mineBoxCount[dc.myBox.getUID()].compareTo(BigInteger.valueOf(dc.myBox.getSquares().size())) == 0) {
-				if (pl.allocatedMines[dc.myBox.getUID()] == dc.myBox.getSquares().size()) {
-					logger.log(Level.DEBUG, "Location %s is a mine on this Probability line %d", dc.candidate, pl.allocatedMines[dc.myBox.getUID()]);
-					mineCount++;
-					continue line;
-				} else {
-					logger.log(Level.DEBUG, "Location %s is not a mine on this Probability line %d", dc.candidate, pl.allocatedMines[dc.myBox.getUID()]);
-				}
-				
-				if (completeScan && pl.mineCount != minesLeft) {
-					continue;
-				}				
-				
-				// all the bad boxes must be zero
-				for (Box b: dc.badBoxes) {
-					
-					BigInteger requiredMines;
-                    //int requiredMines;
-                    if (b.getUID() == dc.myBox.getUID()) {
-                        requiredMines = BigInteger.valueOf(b.getSquares().size() - 1).multiply(pl.solutionCount);
-                    } else {
-                        requiredMines = BigInteger.valueOf(b.getSquares().size()).multiply(pl.solutionCount);
-                    }
-					
-					if (pl.mineBoxCount[b.getUID()].signum() != 0 && pl.mineBoxCount[b.getUID()].compareTo(requiredMines) != 0) {
-						logger.log(Level.DEBUG, "Tile %s is not dead because a bad box is neither empty nor full of mines", dc.candidate);
-						okay = false;
-						break line;
-					}
-				}
-				
-				//BigInteger tally = BigInteger.ZERO;
-				int tally = 0;
-				// the number of mines in the good boxes must always be the same
-				for (Box b: dc.goodBoxes) {
-					//tally = tally.add(pl.mineBoxCount[b.getUID()]);
-					tally = tally + pl.allocatedMines[b.getUID()];
-				}
-				//boardState.display("Location " + dc.candidate.display() + " has mine tally " + tally);
-				if (dc.firstCheck) {
-					dc.total = tally;
-					dc.firstCheck = false;
-				} else {
-					if (dc.total != tally) {
-						logger.log(Level.DEBUG, "Tile %s is not dead because the sum of mines in good boxes is not constant. Was %d now %d. Mines in probability line %d", dc.candidate, dc.total, tally, pl.mineCount);
-						okay = false;
-						break;
-					}
-				}
-			}
-			
-			// if a check failed or this tile is a mine for every solution then it is alive
-			if (!okay || mineCount == this.workingProbs.size()) {
-				dc.isAlive = true;
-			} else {
-				// add the dead locations we found 
-				deadLocations = deadLocations.add(dc.candidate);
-				//logger.log(Level.INFO, "%s is dead", dc.candidate);
-			}
-			
-		}
-		
-	}
-
 	/*
 	// an edge is dead if every tile on the edge is dead
 	private boolean checkEdgeIsDead() {
@@ -1436,67 +2650,6 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	}
 	*/
 	
-	// an edge is isolated if every tile on it is completely surrounded by boxes also on the same edge 
-	// (we have already established this area has a fixed number of mines)
-	private boolean checkEdgeIsIsolated(boolean equalMines) {
-		
-		Set<Location> edgeTiles = new HashSet<>();
-		Set<Location> edgeWitnesses = new HashSet<>();
-		
-		boolean everything = true;
-		
-		// load each tile on this edge into a set
-        for (int i = 0; i < this.mask.length; i++) {
-            if (this.mask[i]) {  
-            	edgeTiles.addAll(boxes.get(i).getSquares());
-            	edgeWitnesses.addAll(boxes.get(i).getWitnesses());
-             } else {
-            	everything = false;
-            }
-        }
-
-        // if this edge is everything then it isn't an isolated edge  - this is wrong because it doesn't allow for off edge tiles
-        //if (everything) {
-        //	logger.log(Level.DEBUG, "Not enclosed because the edge is everything");
-        //	return false;
-        //}
-        
-        
-		// check whether every tile adjacent to the tiles on the edge is itself on the edge
-        for (int i = 0; i < this.mask.length; i++) {
-            if (this.mask[i]) {   
-            	for (Square tile: boxes.get(i).getSquares()) {
-            		if (!edgeTiles.containsAll(boardState.getAdjacentUnrevealedSquares(tile))) {
-            			logger.log(Level.DEBUG, "Not enclosed because a tile's adjacent tiles isn't on the edge: %s", tile);
-            			return false;
-            		}
-            	}
-            }
-        }
-
-        if (equalMines) {
-        	logger.log(Level.INFO, "Enclosed Edge with equal mines found");
-        } else {
-        	logger.log(Level.INFO, "Enclosed Edge with unequal mines found");
-        	return true;
-        }
-
-        // an enclosed edge with a known number of mines can be solved independently from the main board
-        
-        List<Location> tiles = new ArrayList<>(edgeTiles);
-        List<Location> witnesses = new ArrayList<>(edgeWitnesses);
-        int mines = workingProbs.get(0).mineCount;
-        
-        // build a web of the isolated edge and use it to build a brute force
-        WitnessWeb isolatedEdge = new WitnessWeb(boardState, witnesses, tiles);
-        BruteForce bruteForce = new BruteForce(boardState.getSolver(), boardState, isolatedEdge, mines, boardState.getSolver().preferences.getBruteForceMaxIterations(), 
-        		boardState.getSolver().preferences.getBruteForceMaxSolutions(), "Isolated Edge");
-        
-        isolatedEdges.add(bruteForce);
-        
-		return true;
-	}
-	
 	private void determineCandidateDeadLocations() {
 		
 		// for each square on the edge
@@ -131,6 +131,11 @@ public class ProgressEvaluator implements LocationEvaluator {
 	public void evaluateLocations() {
 
 		for (Location tile: tileOfInterest) {
+			// once a tile has been evaluated stop if the solver has been stopped, the best of those evaluated will be used
+			if (!evaluated.isEmpty() && solver.isStopped()) {
+				solver.logger.log(Level.INFO, "Evaluation stopped by the solver after %d tiles", evaluated.size());
+				break;
+			}
 			evaluateLocation(tile);
 		}
 
@@ -501,6 +501,12 @@ public class RecursiveSafetyEvaluator implements LocationEvaluator {
 		// recursively get the safety of each tile
 		for (Location tile: tiles) {
 			
+			// once there is a best tile stop if the solver has been stopped
+			if (depth == 0 && bestTile != null && solver.isStopped()) {
+				solver.logger.log(Level.INFO, "Recursive safety stopped by the solver, using the best tile so far %s", bestTile);
+				break;
+			}
+			
 			Box tileBox = currPe.getBox(tile);
 			
 			BigInteger safetyTally;
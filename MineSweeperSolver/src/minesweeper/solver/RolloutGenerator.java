@@ -456,11 +456,12 @@ public class RolloutGenerator {
 		return boardState.getGameHeight();
 	}
 	
-	public synchronized GameStateModelViewer generateGame(long seed) {
+	public GameStateModelViewer generateGame(long seed) {
 		return generateGame(seed, null);
 	}
 	
-	public synchronized GameStateModelViewer generateGame(long seed, Location safeTile) {
+	// this only reads what was found when the generator was built, so games can be generated on many threads at once
+	public GameStateModelViewer generateGame(long seed, Location safeTile) {
 		
 		GameStateModelViewer result;
 		
@@ -0,0 +1,95 @@
+package minesweeper.solver;
+
+import java.util.List;
+
+import minesweeper.solver.constructs.WitnessData;
+import minesweeper.structure.Location;
+
+/**
+ * Bit masks over the squares being brute forced.  These are built once before iterating so that checking a candidate
+ * solution only needs to count the bits shared by a mask and the sample, rather than testing the adjacency of every mine.
+ */
+public class SampleMasks {
+
+	private final int words;
+	private final long[] sampleBits;     // the squares holding a mine in the current sample
+	private final long[][] squareMasks;  // the squares adjacent to each square
+	private final int[] squareFlags;     // the confirmed mines adjacent to each square
+
+	/**
+	 * Builds the masks for the squares and sets the mask and value of each witness
+	 */
+	protected SampleMasks(BoardState boardState, List<Location> square, WitnessData[] witnessData) {
+
+		this.words = (square.size() + 63) / 64;
+		this.sampleBits = new long[words];
+
+		for (WitnessData d: witnessData) {
+			d.mask = buildMask(square, d.location);
+			d.value = boardState.getWitnessValue(d.location);
+		}
+
+		this.squareMasks = new long[square.size()][];
+		this.squareFlags = new int[square.size()];
+		for (int i=0; i < square.size(); i++) {
+			squareMasks[i] = buildMask(square, square.get(i));
+			squareFlags[i] = boardState.countAdjacentConfirmedFlags(square.get(i));
+		}
+
+	}
+
+	// a mask of the squares adjacent to the location
+	private long[] buildMask(List<Location> square, Location l) {
+
+		long[] mask = new long[words];
+		for (int i=0; i < square.size(); i++) {
+			if (square.get(i).isAdjacent(l)) {
+				mask[i >>> 6] |= 1L << i;
+			}
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Load the mines in the sample, these are indices into the list of squares
+	 */
+	protected void setSample(int[] sample) {
+
+		for (int i=0; i < words; i++) {
+			sampleBits[i] = 0;
+		}
+		for (int index: sample) {
+			sampleBits[index >>> 6] |= 1L << index;
+		}
+
+	}
+
+	/**
+	 * The number of mines in the current sample which are in the mask
+	 */
+	protected int countMines(long[] mask) {
+
+		int count = 0;
+		for (int i=0; i < words; i++) {
+			count = count + Long.bitCount(mask[i] & sampleBits[i]);
+		}
+
+		return count;
+	}
+
+	/**
+	 * True if the square holds a mine in the current sample
+	 */
+	protected boolean isMine(int index) {
+		return (sampleBits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * The number of mines, confirmed or in the current sample, adjacent to the square
+	 */
+	protected int countAdjacentMines(int index) {
+		return squareFlags[index] + countMines(squareMasks[index]);
+	}
+
+}
@@ -208,10 +208,16 @@ public class SecondarySafetyEvaluator implements LocationEvaluator {
 		
 		if (!notDefered.isEmpty()) {
 			for (Location tile: notDefered) {
+				if (isStopped()) {
+					break;
+				}
 				evaluateLocation(tile);
 			}					
 		} else {
 			for (Location tile: defered) {
+				if (isStopped()) {
+					break;
+				}
 				evaluateLocation(tile);
 			}					
 		}
@@ -225,9 +231,23 @@ public class SecondarySafetyEvaluator implements LocationEvaluator {
 		
 		locations.sort(null);
 		for (Location tile: locations) {
+			if (isStopped()) {
+				break;
+			}
 			evaluateLocation(tile);
 		}						
 	}
+	
+	// once a tile has been evaluated stop if the solver has been stopped, the best of those evaluated will be used
+	private boolean isStopped() {
+		
+		if (!evaluated.isEmpty() && solver.isStopped()) {
+			solver.logger.log(Level.INFO, "Evaluation stopped by the solver after %d tiles", evaluated.size());
+			return true;
+		}
+		
+		return false;
+	}
 
 	/**
 	 * Evaluate a tile to see the expected number of clears it will provide
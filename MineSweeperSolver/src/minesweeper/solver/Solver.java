@@ -125,6 +125,15 @@ public class Solver implements Asynchronous<Action[]> {
 	// a binomial coefficient generator which allows up to (choose n from 1000000) and builds a cache of everything up to (choose n from 500) 
 	public final static int BINOMIAL_CACHE_LIMIT = 500;
 	public final static Binomial binomialEngine = new Binomial(1000000, BINOMIAL_CACHE_LIMIT); 
+	
+	// recent large binomial coefficients, shared by all the solvers
+	public final static BinomialCache binomialCache = new BinomialCache(5000, BINOMIAL_CACHE_LIMIT, binomialEngine);
+
+	// how many independent edge groups are remembered so the probability engine can reuse them on later moves
+	final static int EDGE_GROUP_CACHE_SIZE = 2000;
+	
+	// the results of independent edge groups by shape, shared by every solver
+	public final static EdgeGroupCache edgeShapeCache = new EdgeGroupCache("Edge shape", 20000);
 
 
 	protected final SolverSettings preferences;
@@ -138,6 +147,9 @@ public class Solver implements Asynchronous<Action[]> {
 
 	// a class which holds the solves current view of the board
 	private final BoardState boardState;
+	
+	// the edge of the board, kept up to date as the board changes
+	private final EdgeWeb edgeWeb;
 	private ProbabilityEngineModel pe;
 	private BruteForce bf;
 
@@ -156,6 +168,7 @@ public class Solver implements Asynchronous<Action[]> {
 	// work areas 
 	private boolean[] workRestNotFlags;
 	private boolean[] workRestNotClear;
+	private SampleMasks sampleMasks;
 
 
 	private Location overriddenStartLocation;
@@ -164,6 +177,11 @@ public class Solver implements Asynchronous<Action[]> {
 
 	private FinalMoves answer;
 
+	// set when the solver has been asked to stop, the deadline is when the time limit for the move runs out
+	private volatile boolean stopRequested = false;
+	private volatile boolean partialAnswer = false;
+	private long deadline = Long.MAX_VALUE;
+
 	private PlayStyle playStyle = PlayStyle.FLAGGED;
 
 	// used to indicate that the solver shouldn't bother placing flags on the board
@@ -181,7 +199,10 @@ public class Solver implements Asynchronous<Action[]> {
 	private boolean playOpening = true;
 
 	// A cache to hold recent large Binomial coefficients
-	BinomialCache biCache;
+	BinomialCache biCache = binomialCache;
+	
+	// A cache to hold the results of independent edge groups so unchanged groups aren't processed again
+	final EdgeGroupCache groupCache = new EdgeGroupCache("Edge group", EDGE_GROUP_CACHE_SIZE);
 	
 	// If we are only interested in the win rate we can cheat when we encounter isolated edges
 	// if there is x chance of surviving the edge then 
@@ -216,6 +237,8 @@ public class Solver implements Asynchronous<Action[]> {
 		this.overriddenStartLocation = preferences.getStartLocation();
 
 		this.boardState = new BoardState(this);
+		this.edgeWeb = new EdgeWeb(boardState);
+		boardState.setEdgeWeb(edgeWeb);
 		boardState.process();
 
 		logger.log(Level.INFO, "Running with %d Cores", CORES);
@@ -243,6 +266,14 @@ public class Solver implements Asynchronous<Action[]> {
 	@Override
 	public void start() {
 
+		stopRequested = false;
+		partialAnswer = false;
+		if (preferences.getMoveTimeLimit() > 0) {
+			deadline = System.currentTimeMillis() + preferences.getMoveTimeLimit();
+		} else {
+			deadline = Long.MAX_VALUE;
+		}
+
 		LoopCheck check = new LoopCheck();
 
 		Thread checkThread  = new Thread(check);
@@ -262,10 +293,18 @@ public class Solver implements Asynchronous<Action[]> {
 
 		check.finishedOkay();
 
+		if (partialAnswer) {
+			this.logger.log(Level.INFO, "Analysis was stopped before it completed, the best move found so far is being returned");
+		}
+
 	}
 
+	/**
+	 * Ask the solver to stop analysing and return the best move found so far
+	 */
 	@Override
 	public void requestStop() {
+		stopRequested = true;
 	}
 
 	@Override
@@ -274,6 +313,27 @@ public class Solver implements Asynchronous<Action[]> {
 	}    
 	// end of Asynchronous methods
 
+	/**
+	 * True if the analysis should stop because a stop has been requested or the time limit for the move has run out.
+	 * Once this returns true the answer is marked as partial.
+	 */
+	protected boolean isStopped() {
+
+		if (stopRequested || System.currentTimeMillis() > deadline) {
+			partialAnswer = true;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * True if the last move returned was the best found before the analysis was stopped, rather than the result of a complete analysis
+	 */
+	public boolean isPartialAnswer() {
+		return partialAnswer;
+	}
+
 	//public BigDecimal getWinValue() {
 	//	return this.winValue;
 	//}
@@ -436,32 +496,31 @@ public class Solver implements Asynchronous<Action[]> {
 			if (bruteForceAnalysis.isShallow() || expectedMove == null) {  // if the analysis was shallow then don't rely on it
 				bruteForceAnalysis = null;
 			} else {
-				if (expectedMove != null && !boardState.isRevealed(expectedMove)) {  // we haven't played the recommended move - so the analysis is probably useless
+				// if the board has gone off the tree the analysis is re-rooted at the position the board is in
+				if (!boardState.isRevealed(expectedMove)) {
 					this.logger.log(Level.INFO, "The expected Brute Force Analysis move %s wasn't played", expectedMove );
-					bruteForceAnalysis = null;
+				} else if (myGame.query(expectedMove) == 0) {
+					this.logger.log(Level.INFO, "After a zero the board can be in an unexpected state");
+				}
+				
+				Action move = bruteForceAnalysis.getNextMove(boardState);
+				if (move != null) {
+					this.logger.log(Level.INFO, "Brute Force Deep Analysis move is %s", move);
+					newLine("-------- Brute Force Deep Analysis Tree --------");
+					newLine(move.toString());
+					newLine("--------  Brute Force Deep Analysis Tree---------");
+					return new FinalMoves(move);
 				} else {
-					if (myGame.query(expectedMove) != 0) {
-						Action move = bruteForceAnalysis.getNextMove(boardState);
-						if (move != null) {
-							this.logger.log(Level.INFO, "Brute Force Deep Analysis move is %s", move);
-							newLine("-------- Brute Force Deep Analysis Tree --------");
-							newLine(move.toString());
-							newLine("--------  Brute Force Deep Analysis Tree---------");
-							return new FinalMoves(move);
-						}        		            			
-					} else {
-						this.logger.log(Level.INFO, "After a zero the board can be in an unexpected state, so cancelling Brute Force Analysis moves");
-						bruteForceAnalysis = null;
-					}
-
-				}       		
+					bruteForceAnalysis = null;
+				}
 			}
 		}
 
 		int unrevealed = boardState.getTotalUnrevealedCount();
 
+		edgeWeb.update();
 		allWitnesses = boardState.getAllLivingWitnesses();
-		allWitnessedSquares = boardState.getUnrevealedArea(allWitnesses);
+		allWitnessedSquares = edgeWeb.getWitnessedArea(allWitnesses);
 
 
 		newLine("----------- Game Situation -----------");
@@ -495,7 +554,7 @@ public class Solver implements Asynchronous<Action[]> {
 		int totalMinesConfirmed = boardState.getConfirmedMineCount();
 
 		// Build a web of all the witnesses still useful and all the un-revealed tiles adjacent to them
-		WitnessWeb wholeEdge = new WitnessWeb(boardState, allWitnesses, allWitnessedSquares.getLocations());
+		WitnessWeb wholeEdge = new WitnessWeb(boardState, edgeWeb, allWitnesses, allWitnessedSquares.getLocations());
 
 		int obvious = 0;
 		int lessObvious = 0;
@@ -941,7 +1000,7 @@ public class Solver implements Asynchronous<Action[]> {
 			this.logger.log(Level.INFO, "Doing adversarial rollout");
 
 			long nanoStart = System.nanoTime();
-			WitnessWeb arWholeEdge = new WitnessWeb(boardState, allWitnesses, allWitnessedSquares.getLocations());
+			WitnessWeb arWholeEdge = new WitnessWeb(boardState, edgeWeb, allWitnesses, allWitnessedSquares.getLocations());
 
 			RolloutGenerator rolloutGenerator = new RolloutGenerator(boardState, arWholeEdge, unrevealed, minesLeft);
 			rolloutGenerator.process();
@@ -1118,11 +1177,12 @@ public class Solver implements Asynchronous<Action[]> {
 
 		int unrevealed = boardState.getTotalUnrevealedCount();
 
+		edgeWeb.update();
 		List<Location> allWitnesses = boardState.getAllLivingWitnesses();
-		Area allWitnessedSquares = boardState.getUnrevealedArea(allWitnesses);
+		Area allWitnessedSquares = edgeWeb.getWitnessedArea(allWitnesses);
 
 		// Build a web of all the witnesses still useful and all the un-revealed tiles adjacent to them
-		WitnessWeb wholeEdge = new WitnessWeb(boardState, allWitnesses, allWitnessedSquares.getLocations());
+		WitnessWeb wholeEdge = new WitnessWeb(boardState, edgeWeb, allWitnesses, allWitnessedSquares.getLocations());
 
 		if (!wholeEdge.isWebValid()) {
 			this.logger.log(Level.WARN, "Web is invalid");
@@ -1150,11 +1210,12 @@ public class Solver implements Asynchronous<Action[]> {
 
 		int unrevealed = boardState.getTotalUnrevealedCount();
 
+		edgeWeb.update();
 		List<Location> allWitnesses = boardState.getAllLivingWitnesses();
-		Area allWitnessedSquares = boardState.getUnrevealedArea(allWitnesses);
+		Area allWitnessedSquares = edgeWeb.getWitnessedArea(allWitnesses);
 
 		// Build a web of all the witnesses still useful and all the un-revealed tiles adjacent to them
-		WitnessWeb wholeEdge = new WitnessWeb(boardState, allWitnesses, allWitnessedSquares.getLocations());
+		WitnessWeb wholeEdge = new WitnessWeb(boardState, edgeWeb, allWitnesses, allWitnessedSquares.getLocations());
 
 		if (!wholeEdge.isWebValid()) {
 			this.logger.log(Level.WARN, "Web is invalid");
@@ -1184,11 +1245,12 @@ public class Solver implements Asynchronous<Action[]> {
 
 		int unrevealed = boardState.getTotalUnrevealedCount();
 
+		edgeWeb.update();
 		List<Location> allWitnesses = boardState.getAllLivingWitnesses();
-		Area allWitnessedSquares = boardState.getUnrevealedArea(allWitnesses);
+		Area allWitnessedSquares = edgeWeb.getWitnessedArea(allWitnesses);
 
 		// Build a web of all the witnesses still useful and all the un-revealed tiles adjacent to them
-		WitnessWeb wholeEdge = new WitnessWeb(boardState, allWitnesses, allWitnessedSquares.getLocations(), Logger.NO_LOGGING);
+		WitnessWeb wholeEdge = new WitnessWeb(boardState, edgeWeb, allWitnesses, allWitnessedSquares.getLocations(), Logger.NO_LOGGING);
 
 		if (!wholeEdge.isWebValid()) {
 			this.logger.log(Level.WARN, "Web is invalid");
@@ -1227,13 +1289,14 @@ public class Solver implements Asynchronous<Action[]> {
 			
 			unrevealed = boardState.getTotalUnrevealedCount();
 
+			edgeWeb.update();
 			allWitnesses = boardState.getAllLivingWitnesses();
-			allWitnessedSquares = boardState.getUnrevealedArea(allWitnesses);
+			allWitnessedSquares = edgeWeb.getWitnessedArea(allWitnesses);
 
 			minesLeft = myGame.getMines() - boardState.getConfirmedMineCount();
 			
 			// Build a web of all the witnesses still useful and all the un-revealed tiles adjacent to them
-			wholeEdge = new WitnessWeb(boardState, allWitnesses, allWitnessedSquares.getLocations(), Logger.NO_LOGGING);
+			wholeEdge = new WitnessWeb(boardState, edgeWeb, allWitnesses, allWitnessedSquares.getLocations(), Logger.NO_LOGGING);
 			
 			//pe = new ProbabilityEngineFast(boardState, wholeEdge, unrevealed, minesLeft, Logger.NO_LOGGING);
 			//pe.process();
@@ -1696,6 +1759,7 @@ public class Solver implements Asynchronous<Action[]> {
 		// define work areas
 		workRestNotFlags = new boolean[witnessData.length];
 		workRestNotClear = new boolean[witnessData.length];
+		sampleMasks = new SampleMasks(boardState, square, witnessData);
 
 		while (sample != null) {
 
@@ -1761,26 +1825,18 @@ public class Solver implements Asynchronous<Action[]> {
 		}
 
 
-		// get the location of the mines
-		Location[] mine = new Location[sample.length];
-		for (int i=0; i < sample.length; i++) {
-			mine[i] = square.get(sample[i]);
-		}
+		// load the mines into the bit masks
+		sampleMasks.setSample(sample);
 
 		for (int i=0; i < witnessData.length; i++) {
 
 			if (!witnessData[i].alwaysSatisfied) {
 				int flags1 = witnessData[i].currentFlags;
-				int flags2 = 0;
 
 				// count how many candidate mines are next to this witness
-				for (int j = 0; j < mine.length; j++) {
-					if (mine[j].isAdjacent(witnessData[i].location)) {
-						flags2++;
-					}
-				}
+				int flags2 = sampleMasks.countMines(witnessData[i].mask);
 
-				int flags3 = boardState.getWitnessValue(witnessData[i].location);
+				int flags3 = witnessData[i].value;
 
 				// if the candidate solution puts more flags around the witness
 				// than it says it has then the solution is invalid
@@ -1831,23 +1887,10 @@ public class Solver implements Asynchronous<Action[]> {
 
 			for (int i=0; i < square.size(); i++) {
 
-				boolean isMine = false;
-				for (int j=0; j < sample.length; j++) {
-					if (i == sample[j]) {
-						isMine = true;
-						break;
-					}
-				}
-
 				// if we are a mine then it doesn't matter how many mines surround us
-				if (!isMine) {
-					byte flags2 = (byte) boardState.countAdjacentConfirmedFlags(square.get(i));
-					// count how many candidate mines are next to this square
-					for (Location mine1 : mine) {
-						if (mine1.isAdjacent(square.get(i))) {
-							flags2++;
-						}
-					}            
+				if (!sampleMasks.isMine(i)) {
+					// count how many confirmed and candidate mines are next to this square
+					byte flags2 = (byte) sampleMasks.countAdjacentMines(i);
 					solution[i] = flags2;
 					if (bigDistribution != null) {
 						bigDistribution[i][flags2] = bigDistribution[i][flags2].add(BigInteger.ONE);
@@ -2112,6 +2155,7 @@ public class Solver implements Asynchronous<Action[]> {
 
 		this.logger.log(Level.DEBUG, "Killing the Solver Object");
 
+		boardState.detach();
 		coachDisplay.kill();
 
 	}
@@ -0,0 +1,131 @@
+package minesweeper.solver;
+
+/**
+ * A fixed size table holding the winning lines of the positions the brute force deep analysis has already analysed.
+ * Positions are packed into longs and the entries are held in primitive arrays, so each entry only takes a few bytes.
+ *
+ * The table is split into buckets of slots. When a bucket is full the entry which needed the least work to calculate is replaced.
+ */
+public class TranspositionTable {
+
+	// returned when the position isn't in the table
+	protected final static int NOT_FOUND = -1;
+
+	private final static int BUCKET_SIZE = 8;
+	private final static int LOCKS = 64;
+
+	private final int words;         // the number of longs in each key
+	private final int buckets;
+	private final long[] keys;
+	private final int[] winningLines;
+	private final int[] work;        // zero when the slot is empty
+	private final Object[] locks = new Object[LOCKS];
+
+	/**
+	 * Create a table holding up to capacity entries for keys of this number of longs
+	 */
+	public TranspositionTable(int words, int capacity) {
+
+		this.words = words;
+		this.buckets = Integer.highestOneBit(Math.max(BUCKET_SIZE, capacity) / BUCKET_SIZE);
+
+		int slots = buckets * BUCKET_SIZE;
+		this.keys = new long[slots * words];
+		this.winningLines = new int[slots];
+		this.work = new int[slots];
+
+		for (int i=0; i < LOCKS; i++) {
+			locks[i] = new Object();
+		}
+
+	}
+
+	/**
+	 * The winning lines of the position or NOT_FOUND
+	 */
+	protected int get(long[] key) {
+
+		int bucket = bucket(key);
+
+		synchronized (locks[bucket & (LOCKS - 1)]) {
+			int slot = find(bucket, key);
+			if (slot == -1) {
+				return NOT_FOUND;
+			} else {
+				return winningLines[slot];
+			}
+		}
+
+	}
+
+	protected void put(long[] key, int lines, int effort) {
+
+		int bucket = bucket(key);
+
+		synchronized (locks[bucket & (LOCKS - 1)]) {
+
+			int slot = find(bucket, key);
+
+			// otherwise use an empty slot or the slot which needed the least work
+			if (slot == -1) {
+				int start = bucket * BUCKET_SIZE;
+				for (int i = start; i < start + BUCKET_SIZE; i++) {
+					if (work[i] == 0) {
+						slot = i;
+						break;
+					} else if (work[i] < effort && (slot == -1 || work[i] < work[slot])) {
+						slot = i;
+					}
+				}
+
+				// everything in the bucket needed more work, so don't store this
+				if (slot == -1) {
+					return;
+				}
+
+				System.arraycopy(key, 0, keys, slot * words, words);
+			}
+
+			winningLines[slot] = lines;
+			work[slot] = Math.max(1, effort);
+		}
+
+	}
+
+	// the slot holding the key or -1
+	private int find(int bucket, long[] key) {
+
+		int start = bucket * BUCKET_SIZE;
+		for (int i = start; i < start + BUCKET_SIZE; i++) {
+			if (work[i] != 0 && matches(i, key)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private boolean matches(int slot, long[] key) {
+
+		int offset = slot * words;
+		for (int i=0; i < words; i++) {
+			if (keys[offset + i] != key[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private int bucket(long[] key) {
+
+		long h = 0;
+		for (long k: key) {
+			h = (h ^ k) * 0x9E3779B97F4A7C15L;
+		}
+		h = h ^ (h >>> 29);
+
+		return (int) h & (buckets - 1);
+	}
+
+}
@@ -8,7 +8,9 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import minesweeper.solver.constructs.Box;
 import minesweeper.solver.constructs.Square;
@@ -28,6 +30,17 @@ public class WitnessWeb {
     
     final private List<Box> boxes = new ArrayList<>();
     
+    // the position of each square in the list of squares, so adjacent squares can be found without searching the list
+    final private Map<Location, Integer> squareIndex = new HashMap<>();
+    
+    // the pruned witnesses with each set of squares and the box for each set of witnesses
+    final private Map<List<Integer>, List<Witness>> witnessIndex = new HashMap<>();
+    final private Map<List<Witness>, Box> boxIndex = new HashMap<>();
+    
+    // the solver's edge this web was built from, when it can be trusted for the squares' boxes and the witnesses' groups
+    private EdgeWeb edgeWeb;
+    final private Map<Integer, Box> edgeBoxIndex = new HashMap<>();
+    
     final private List<Witness> independentWitness = new ArrayList<>();
     private final Logger logger;
     
@@ -50,6 +63,18 @@ public class WitnessWeb {
     }
     
     public WitnessWeb(BoardState boardState, List<? extends Location> allWit, Collection<Location> allSqu, Logger logger) {
+    	this(boardState, null, allWit, allSqu, logger);
+    }
+    
+    public WitnessWeb(BoardState boardState, EdgeWeb edgeWeb, List<? extends Location> allWit, Collection<Location> allSqu) {
+    	this(boardState, edgeWeb, allWit, allSqu, boardState.getLogger());
+    }
+    
+    /**
+     * Build the web from the solver's edge, which already holds the squares next to each witness, the box each square is in and the group each witness is in.
+     * The witnesses should be the living witnesses and the squares those next to them, as they were when the edge was last updated.
+     */
+    public WitnessWeb(BoardState boardState, EdgeWeb edgeWeb, List<? extends Location> allWit, Collection<Location> allSqu, Logger logger) {
         
     	//long nanoStart = System.nanoTime();
     	
@@ -59,9 +84,13 @@ public class WitnessWeb {
         
         // create squares for all the Square locations provided
         for (Location squ: allSqu) {
+        	squareIndex.put(squ, squares.size());
             squares.add(new Square(squ));
         }     
         
+        // if a location is given twice then it can't be found by its index
+        boolean indexed = (squareIndex.size() == squares.size());
+        
         // create witnesses for all the Witness locations provided
         // and attach adjacent Squares
         List<Square> adjSqu;
@@ -70,17 +99,41 @@ public class WitnessWeb {
             //int mines = gs.query(wit) - solver.countConfirmedFlags(wit);
             int mines = boardState.getWitnessValue(wit) - boardState.countAdjacentConfirmedFlags(wit);
             
-            adjSqu = new ArrayList<>();
-            for (Square squ: squares) {
-                if (squ.isAdjacent(wit)) {
-                	adjSqu.add(squ);
+            List<Integer> adjIndex = new ArrayList<>();
+            List<Location> edgeSquares = (edgeWeb == null) ? null : edgeWeb.getSquares(wit);
+            if (indexed && edgeSquares != null) {
+            	for (Location adj: edgeSquares) {
+            		Integer index = squareIndex.get(adj);
+            		if (index != null) {
+            			adjIndex.add(index);
+            		}
+            	}
+            	Collections.sort(adjIndex);   // keep the squares in the order they were provided
+            } else if (indexed) {
+            	for (Location adj: boardState.getAdjacentSquaresIterable(wit)) {
+            		Integer index = squareIndex.get(adj);
+            		if (index != null) {
+            			adjIndex.add(index);
+            		}
+            	}
+            	Collections.sort(adjIndex);   // keep the squares in the order they were provided
+            } else {
+                for (int i=0; i < squares.size(); i++) {
+                    if (squares.get(i).isAdjacent(wit)) {
+                    	adjIndex.add(i);
+                    }
                 }
             }
+            
+            adjSqu = new ArrayList<>(adjIndex.size());
+            for (int index: adjIndex) {
+            	adjSqu.add(squares.get(index));
+            }
             if (mines > adjSqu.size() || mines < 0) {
             	validWeb = false;
             	return;
             }
-            addWitness(new Witness(wit, mines, adjSqu));
+            addWitness(new Witness(wit, mines, adjSqu), indexed ? adjIndex : null);
         }        
         
         // this sorts the witnesses by the number of iterations around them
@@ -89,14 +142,24 @@ public class WitnessWeb {
         // now attach non-pruned witnesses to adjacent Squares
         for (Witness wit: prunedWitnesses) {
             //System.out.println("Witness " + wit.getLocation().display() + " has " + wit.getSquares().size() + " squares");
-            for (Square squ: squares) {
-                if (squ.isAdjacent(wit)) {
-                    squ.addWitness(wit);
-                }
+            for (Square squ: wit.getSquares()) {
+            	squ.addWitness(wit);
             }
             //solver.display(wit.getLocation().display() + " has " + wit.getMines() + " Mines to find " + wit.getSquares().size() + " adjacent squares");
         }                
 
+        if (edgeWeb != null && indexed && fitsEdge(edgeWeb)) {
+        	this.edgeWeb = edgeWeb;
+        	
+        	// the edge already knows which connected group each witness and square is in
+        	for (Witness wit: prunedWitnesses) {
+        		int group = edgeWeb.getGroup(wit);
+        		wit.setWebNum(group);
+        		for (Square squ: wit.getSquares()) {
+        			squ.setWebNum(group);
+        		}
+        	}
+        }
 
     	//long nanoEnd = System.nanoTime();
         
@@ -105,6 +168,26 @@ public class WitnessWeb {
     }
     
    
+    // the edge can only be used if this web has all the edge's witnesses and the edge knows every square in this web
+    private boolean fitsEdge(EdgeWeb edge) {
+    	
+    	if (originalWitnesses.size() != edge.getWitnessCount()) {
+    		return false;
+    	}
+        for (Location wit: originalWitnesses) {
+        	if (edge.getGroup(wit) == 0) {
+        		return false;
+        	}
+        }
+        for (Square squ: squares) {
+        	if (edge.getBox(squ) == -1) {
+        		return false;
+        	}
+        }
+        
+        return true;
+    }
+    
     private void setWeb(Square squ, int num) {
         
         if (squ.getWebNum() != 0 && squ.getWebNum() != num) {
@@ -130,10 +213,23 @@ public class WitnessWeb {
 
     }
     
-    private void addWitness(Witness wit) {
+    // the square indices are null when the witnesses can't be looked up by them
+    private void addWitness(Witness wit, List<Integer> adjIndex) {
+        
+        // only witnesses with the same squares can be duplicates
+        List<Witness> candidates;
+        if (adjIndex == null) {
+        	candidates = prunedWitnesses;
+        } else {
+        	candidates = witnessIndex.get(adjIndex);
+        	if (candidates == null) {
+        		candidates = new ArrayList<>();
+        		witnessIndex.put(adjIndex, candidates);
+        	}
+        }
         
         // if the witness is a duplicate then don't store it
-        for (Witness w: prunedWitnesses) {
+        for (Witness w: candidates) {
             if (w.equivalent(wit)) {
             	if (boardState.getWitnessValue(w) - boardState.countAdjacentConfirmedFlags(w) != boardState.getWitnessValue(wit) - boardState.countAdjacentConfirmedFlags(wit)) {
             		logger.log(Level.WARN, "%s and %s share unrevealed squares but have different mine totals!", w, wit);
@@ -145,6 +241,9 @@ public class WitnessWeb {
         }
         
         prunedWitnesses.add(wit);
+        if (adjIndex != null) {
+        	candidates.add(wit);
+        }
         
     }
     
@@ -154,20 +253,26 @@ public class WitnessWeb {
     public void generateBoxes() {
     	
         int boxCount = 0;
-        // put each square in a box
+        // put each square in a box, the squares' witnesses are in the same order so squares which fit the same box have equal lists.
+        // If the web was built from the edge then the edge already knows which squares share a box.
         for (Square squ: squares) {
-        	boolean found = false;
         	// see if the square fits an existing box
-        	for (Box b: boxes) {
-        		if (b.fitsBox(squ)) {
-        			b.addSquare(squ);
-        			found = true;
-        			break;
-        		}
+        	Box b;
+        	if (edgeWeb != null) {
+        		b = edgeBoxIndex.get(edgeWeb.getBox(squ));
+        	} else {
+        		b = boxIndex.get(squ.getWitnesses());
         	}
-        	// if not create a new box for it
-        	if (!found) {
-        		boxes.add(new Box(squ, boxCount));
+        	if (b != null) {
+        		b.addSquare(squ);
+        	} else {   	// if not create a new box for it
+        		b = new Box(squ, boxCount);
+        		boxes.add(b);
+        		if (edgeWeb != null) {
+        			edgeBoxIndex.put(edgeWeb.getBox(squ), b);
+        		} else {
+        			boxIndex.put(squ.getWitnesses(), b);
+        		}
         		boxCount++;
         	}
         }
@@ -256,6 +361,13 @@ public class WitnessWeb {
     	return this.boxes;
     }
     
+    /**
+     * True if the witnesses have been numbered with the connected group they are in, by the edge this web was built from
+     */
+    public boolean hasEdgeGroups() {
+    	return this.edgeWeb != null;
+    }
+    
     
     // how many iterations will be required to process this web with the provided number of mines
     public BigInteger getIterations(int mines) {
@@ -348,13 +460,20 @@ public class WitnessWeb {
     // if the location passed is a square in the web then return true;
     public boolean isOnWeb(Location l) {
         
-        for (Square s: squares) {
-            if (s.equals(l)) {
-                return true;
+        return squareIndex.containsKey(l);
+        
+    }
+    
+    // if every un-revealed square adjacent to the witness is on the web then the web's squares must hold exactly the witness's mines
+    public boolean isContained(Witness w) {
+        
+        for (Location l: boardState.getAdjacentUnrevealedSquares(w)) {
+            if (!isOnWeb(l)) {
+                return false;
             }
         }
         
-        return false;
+        return true;
         
     }
     
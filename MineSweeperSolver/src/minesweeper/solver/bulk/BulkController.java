@@ -1,8 +1,12 @@
 package minesweeper.solver.bulk;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 import minesweeper.gamestate.GameStateModel;
+import minesweeper.solver.Solver;
 import minesweeper.solver.bulk.BulkRequest.BulkAction;
 import minesweeper.solver.settings.PlayStyle;
 import minesweeper.solver.settings.SolverSettings;
@@ -13,24 +17,35 @@ abstract public class BulkController implements Runnable {
 	private final int workers;
 	private final SolverSettings[] solverSettings;
 	private final int bufferSize;
-	private final BulkRequest[] buffer;
+	private final AtomicReferenceArray<BulkRequest> buffer;   // each played game is published into its slot by the worker which played it
 	private final BulkWorker[] bulkWorkers;
+	private final Thread[] workerThreads;
 	
 	private final static int REPORT_INTERVAL = 200;
 	private final static int DEFAULT_BUFFER_PER_WORKER = 1000;
+	private final static int READY_PER_WORKER = 2;    // how many games are generated ahead of the workers
+	private final static long PARK_NANOS = 100_000_000L;   // how long a parked thread waits before looking again, in case it wasn't woken
 	
-	private volatile int waitingSlot = -1;   // this is the next slot we are waiting to be returned
-	private volatile int nextSlot = 0;      // this is the next slot to be dispatched
+	private volatile int waitingSlot = 0;   // this is the next slot we are waiting to be returned
+	private int nextSlot = 0;               // this is the next slot to be dispatched
 	
 	private volatile int nextSequence = 1;
 	private volatile int waitingSequence = 0;
 	private volatile int reportInterval = REPORT_INTERVAL;
 	private final Random seeder;
 	private volatile boolean finished = false;
-	private volatile BulkEventMain event;
 	private volatile BulkEventMain finalEvent;
 	
-	private Thread mainThread;
+	// the games are generated by their own threads and wait here, in sequence order, for a worker to take them
+	private final RequestRing ready;
+	private final Object generationLock = new Object();
+	private int generators = 1;
+	private int queuedSequence = 0;
+	private final AtomicInteger activeGenerators = new AtomicInteger();
+	private volatile boolean generated = false;    // set when every game has been generated
+	private volatile Thread waitingGenerator;      // a generator waiting for room in the buffer
+	
+	private volatile Thread mainThread;
 	private long startTime;
 	private long endTime;
 	
@@ -73,10 +88,12 @@ abstract public class BulkController implements Runnable {
 		this.gamesToPlay = gamesToPlay;
 		this.workers = workers;
 		this.bulkWorkers = new BulkWorker[this.workers];
+		this.workerThreads = new Thread[this.workers];
 		this.solverSettings = solverSettings;
 		
 		this.bufferSize = bufferPerWorker * this.workers;
-		this.buffer = new BulkRequest[bufferSize];
+		this.buffer = new AtomicReferenceArray<>(bufferSize);
+		this.ready = new RequestRing(READY_PER_WORKER * this.workers);
 		
 		// allow for as many of these as there are solver settings
 		this.preGameListeners = new GamePreListener[solverSettings.length];  
@@ -124,6 +141,13 @@ abstract public class BulkController implements Runnable {
 		this.reportInterval = reportInterval;
 	}
 	
+	/**
+	 * Set how many threads generate the games, the default is 1.  With more than one, getGameState() and the pre-game listeners must be thread safe.
+	 */
+	public void setGenerators(int generators) {
+		this.generators = Math.max(1, generators);
+	}
+	
 	/**
 	 * Start the number of workers and wait for them to complete. If you don't want your main thread paused then run this on a separate thread.
 	 */
@@ -133,32 +157,50 @@ abstract public class BulkController implements Runnable {
 		
 		this.startTime = System.currentTimeMillis();
 		
-		// remember the current thread so we can wake it when completed
+		// remember the current thread, it collects the played games in order and is woken when the next one arrives
 		mainThread = Thread.currentThread();
 		
+		activeGenerators.set(generators);
+		for (int i=0; i < generators; i++) {
+			Thread generator = new Thread(new Generator(), "generator-" + (i+1));
+			generator.setDaemon(true);
+			generator.start();
+		}
+		
 		for (int i=0; i < workers; i++) {
 			bulkWorkers[i] = new BulkWorker(this, solverSettings);
-			new Thread(bulkWorkers[i], "worker-" + (i+1)).start();
+			workerThreads[i] = new Thread(bulkWorkers[i], "worker-" + (i+1));
+			workerThreads[i].start();
 		}
 		
 		while (!finished) {
-			try {
-				Thread.sleep(10000);
-				//System.out.println("Main thread waiting for bulk run to complete...");
-			} catch (InterruptedException e) {
-				//System.out.println("Main thread wait has been interrupted");
-
-				// process the event and then set it to null
-				if (event != null) {
-					if (eventListener != null) {
-						eventListener.intervalAction(event);
-					}
-					event = null;
-				}
+			if (buffer.get(waitingSlot) == null) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			} else {
+				processSlots();
 			}
 		}
 
 		this.endTime = System.currentTimeMillis();
+		
+		// if we were stopped then post a final event
+		if (finalEvent == null) {
+			finalEvent = createEvent();
+			if (eventListener != null) {
+				eventListener.intervalAction(finalEvent);
+			}
+		}
+		
+		// wait for the workers to finish their last games and then show the stats of the caches they share
+		for (Thread worker: workerThreads) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+			}
+		}
+		
+		Solver.binomialCache.showStats();
+		Solver.edgeShapeCache.showStats();
 		//System.out.println("Finished after " + getDuration() + " milliseconds");
 		
 	}
@@ -172,19 +214,16 @@ abstract public class BulkController implements Runnable {
 			worker.stop();
 		}
 		
-		// create a final event
+		// set the process to finished and wake the main thread, which creates the final event
 		finished = true;
 		
-		this.event = createEvent();
-		this.finalEvent = this.event;
-		
-		// set the process to finished and wake the main thread
-		mainThread.interrupt();
+		ready.wakeAll();
+		LockSupport.unpark(mainThread);
 		
 	}
 	
 	/**
-	 * When the process is finished you can get the final results from here
+	 * When the process is finished you can get the final results from here, once run() has returned
 	 */
 	public BulkEventMain getResults() {
 		return this.finalEvent;
@@ -213,15 +252,13 @@ abstract public class BulkController implements Runnable {
 		
 	}
 	
+	// runs on the main thread, which is the only thread to read the buffer
 	private void processSlots() {
 		
-		boolean doEvent = false;
-		BulkEventMain mainEvent = null; 
-		
 		// process all the games which have been processed and are waiting in the buffer 
-		while (buffer[waitingSlot] != null) {
+		while (!finished && buffer.get(waitingSlot) != null) {
 			
-			BulkRequest request = buffer[waitingSlot];
+			BulkRequest request = buffer.get(waitingSlot);
 
 			// accumulate the stats for each game played
 			for (int i=0; i < solverSettings.length; i++) {
@@ -229,7 +266,7 @@ abstract public class BulkController implements Runnable {
 			}
 			
 			// clear the buffer and move on to the next slot
-			buffer[waitingSlot] = null; 
+			buffer.set(waitingSlot, null); 
 			waitingSlot++;
 			waitingSequence++;
 			
@@ -238,37 +275,36 @@ abstract public class BulkController implements Runnable {
 				this.waitingSlot = this.waitingSlot - bufferSize;
 			}
 			
-			// if we have run and processed all the games then wake the main thread
+			BulkEventMain mainEvent = null;
+			
+			// if we have run and processed all the games then we are finished
 			if (waitingSequence == gamesToPlay) {
-				//System.out.println("All games played, waking the main thread");
+				//System.out.println("All games played");
 				
 				finished = true;
 				
 				this.finalEvent = createEvent();
 				mainEvent = this.finalEvent;
 
-				doEvent = true;
-				
-			// provide an update every now and again, do that on the main thread
+			// provide an update every now and again
 			} else if (this.reportInterval != 0 && waitingSequence % this.reportInterval == 0) {
 				mainEvent = createEvent();
-				doEvent = true;
 			}
 		
 			if (postGameListener != null) {
 				postGameListener.postAction(request);
 			}
 			
+			if (mainEvent != null && eventListener != null) {
+				eventListener.intervalAction(mainEvent);
+			}
+			
 		}
 		
-		// if we have an event to do then interrupt the main thread which will post it
-		if (doEvent) {
-			if (this.event == null) {
-				this.event = mainEvent;
-				mainThread.interrupt();
-			} else {
-				System.out.println("Event suppressed because earlier event is still in progress");
-			}
+		// there may now be room in the buffer for a waiting generator
+		Thread generator = waitingGenerator;
+		if (generator != null) {
+			LockSupport.unpark(generator);
 		}
 		
 	}
@@ -308,44 +344,134 @@ abstract public class BulkController implements Runnable {
 	/**
 	 * Returns the last request and gets the next
 	 */
-	protected synchronized BulkRequest getNextRequest(BulkRequest request) {
+	protected BulkRequest getNextRequest(BulkRequest request) {
 		
 		if (request != null) {
-			buffer[request.slot] = request;
+			returnRequest(request);
+		}
+		
+		// wait for the next game to be generated, unless we have played all the games or we have been stopped
+		while (!finished) {
 			
-			// if this is the slot we are waiting on then process the games which are in the buffer - this is all synchronised so nothing else arrives will it happens
-			if (request.slot == waitingSlot) {
-				processSlots();
+			BulkRequest next = ready.poll();
+			if (next != null) {
+				return next;
 			}
+			
+			if (generated && ready.isEmpty()) {
+				break;
+			}
+			
+			ready.await();
 		}
 		
-		// if we have played all the games or we have been stopped then tell the workers to stop
-		if (nextSequence > gamesToPlay || finished) {
-			return BulkRequest.STOP;			
+		return BulkRequest.STOP;
+		
+	}
+	
+	// publish the played request into its slot and wake the main thread if it is waiting for it
+	private void returnRequest(BulkRequest request) {
+		
+		buffer.set(request.slot, request);
+		
+		if (request.slot == waitingSlot) {
+			LockSupport.unpark(mainThread);
 		}
 		
-		// if the next sequence is a long way ahead of the waiting sequence then wait until we catch up.  Tell the worker to wait.
-		if (nextSequence > waitingSequence + bufferSize - 2) {
-			System.out.println("Buffer is full after " + nextSequence + " games dispatched");
-			return BulkRequest.WAIT;
+	}
+	
+	// generates the games and queues them for the workers
+	private class Generator implements Runnable {
+
+		@Override
+		public void run() {
+			
+			BulkRequest next = claimRequest();
+			while (next != null) {
+				
+				createGames(next);
+				
+				if (!queueRequest(next)) {
+					break;
+				}
+				
+				next = claimRequest();
+			}
+			
+			if (activeGenerators.decrementAndGet() == 0) {
+				generated = true;
+				ready.wakeAll();
+			}
+			
 		}
 		
+	}
+	
+	// take the next sequence number and its seed, or null if there are no more games to generate
+	private BulkRequest claimRequest() {
 		
-		BulkRequest next = new BulkRequest();
-		next.action = BulkAction.RUN;
-		next.sequence = this.nextSequence;
-		next.slot = this.nextSlot;
+		boolean reported = false;
 		
-		next.games = new BulkRequestGame[solverSettings.length];
+		while (true) {
+			
+			synchronized (generationLock) {
+				
+				// if we have generated all the games or we have been stopped then stop generating
+				if (nextSequence > gamesToPlay || finished) {
+					return null;
+				}
+				
+				// unless the next sequence is a long way ahead of the waiting sequence, then wait until we catch up
+				if (hasRoom()) {
+					
+					BulkRequest next = new BulkRequest();
+					next.action = BulkAction.RUN;
+					next.sequence = this.nextSequence;
+					next.slot = this.nextSlot;
+					next.seed = Math.abs(seeder.nextLong() & 0xFFFFFFFFFFFFFl);
+					
+					// roll onto the next sequence
+					this.nextSequence++;
+					this.nextSlot++;
+					
+					// recycle the buffer when we get beyond the top
+					if (this.nextSlot >= bufferSize) {
+						this.nextSlot = this.nextSlot - bufferSize;
+					}
+					
+					return next;
+				}
+			}
+			
+			if (!reported) {
+				System.out.println("Buffer is full after " + nextSequence + " games dispatched");
+				reported = true;
+			}
+			
+			// wait for the main thread to process some games
+			waitingGenerator = Thread.currentThread();
+			if (!hasRoom() && !finished) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+			waitingGenerator = null;
+		}
 		
-		long seed = Math.abs(seeder.nextLong() & 0xFFFFFFFFFFFFFl);
+	}
+	
+	private boolean hasRoom() {
+		return nextSequence <= waitingSequence + bufferSize - 2;
+	}
+	
+	private void createGames(BulkRequest next) {
+		
+		next.games = new BulkRequestGame[solverSettings.length];
 		
 		for (int i=0; i < solverSettings.length; i++) {
 			
 			BulkRequestGame game = new BulkRequestGame();
 			
 			game.solverSettings = solverSettings[i];
-			game.gs = getGameState(seed);
+			game.gs = getGameState(next.seed);
 			
 			// if this setting hs a pre-game listener than run it
 			if (this.preGameListeners[i] != null) {
@@ -359,22 +485,37 @@ abstract public class BulkController implements Runnable {
 			next.games[i] = game;
 			
 		}
-
-		// roll onto the next sequence
-		this.nextSequence++;
-		this.nextSlot++;
 		
-		// if this is the first request then initialise the waiting slot
-		if (waitingSlot == -1) {
-			waitingSlot = 0;
+	}
+	
+	// add the request to the ready queue once the requests before it are there, returns false if the run has been stopped
+	private boolean queueRequest(BulkRequest next) {
+		
+		synchronized (generationLock) {
+			while (queuedSequence != next.sequence - 1) {
+				if (finished) {
+					return false;
+				}
+				try {
+					generationLock.wait(100);
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+		
+		// only the generator whose turn it is gets here, so the ring has a single producer
+		while (!ready.offer(next)) {
+			if (finished) {
+				return false;
+			}
 		}
 		
-		// recycle the buffer when we get beyond the top
-		if (this.nextSlot >= bufferSize) {
-			this.nextSlot = this.nextSlot - bufferSize;
+		synchronized (generationLock) {
+			queuedSequence = next.sequence;
+			generationLock.notifyAll();
 		}
 		
-		return next;
+		return true;
 		
 	}
 
@@ -2,12 +2,6 @@ package minesweeper.solver.bulk;
 
 public class BulkRequest {
 
-	protected final static BulkRequest WAIT = new BulkRequest() {
-		{
-			action = BulkAction.WAIT;
-		}
-	};
-	
 	protected final static BulkRequest STOP = new BulkRequest() {
 		{
 			action = BulkAction.STOP;
@@ -16,13 +10,13 @@ public class BulkRequest {
 	
 	public enum BulkAction {
 		STOP,
-		WAIT,
 		RUN;
 	}
 	
 	protected BulkAction action;
 	protected int sequence;    // the sequence number for this request
 	protected int slot;        // the slot the request is to be store in the buffer
+	protected long seed;       // the seed the games were generated from
 	
 	protected BulkRequestGame[] games;
 	
@@ -6,7 +6,6 @@ import minesweeper.gamestate.GameStateModel;
 import minesweeper.solver.Solver;
 import minesweeper.solver.bulk.BulkRequest.BulkAction;
 import minesweeper.solver.settings.SolverSettings;
-import minesweeper.solver.utility.BinomialCache;
 import minesweeper.structure.Action;
 
 public class BulkWorker implements Runnable {
@@ -14,7 +13,6 @@ public class BulkWorker implements Runnable {
 	private boolean stop = false;
 	private final BulkController controller;
 	private final SolverSettings[] solverSettings;
-	private final BinomialCache bc = new BinomialCache(5000, Solver.BINOMIAL_CACHE_LIMIT, Solver.binomialEngine);
 	
 	protected BulkWorker(BulkController controller, SolverSettings solverSettings[]) {
 		this.controller = controller;
@@ -35,13 +33,6 @@ public class BulkWorker implements Runnable {
 				stop = true;
 				break;
 
-			} else if (request.action == BulkAction.WAIT) { // wait and then ask again
-				try {
-					Thread.sleep(100);
-				} catch (InterruptedException e) {
-				}
-
-				request = controller.getNextRequest(null);	
 			} else {
 
 				//System.out.println("Playing game sequence " + request.sequence);
@@ -57,7 +48,6 @@ public class BulkWorker implements Runnable {
 
 		}
 		
-		bc.showStats();
 		//System.out.println(Thread.currentThread().getName() + " is stopping");
 
 	}
@@ -73,7 +63,6 @@ public class BulkWorker implements Runnable {
 		
 		Solver solver = new Solver(request.gs, request.solverSettings, false);
 		solver.setPlayStyle(controller.getPlayStyle());
-		solver.setBinomialCache(bc);
 
 		
 		int loopCounter = 0;
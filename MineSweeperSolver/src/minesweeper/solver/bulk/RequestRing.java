@@ -0,0 +1,131 @@
+package minesweeper.solver.bulk;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed size ring of requests with a single producer and many consumers.  The producer publishes a request by
+ * writing it to its slot and then moving the head on, the consumers take them in order by moving the tail on with a
+ * compare and set.  Neither side takes a lock, a thread which can't go on parks until the other side wakes it.
+ */
+public class RequestRing {
+
+	// how long a parked thread waits before looking again, in case it wasn't woken
+	private final static long PARK_NANOS = 10_000_000L;
+
+	private final AtomicReferenceArray<BulkRequest> slots;
+	private final int mask;
+
+	private final AtomicLong head = new AtomicLong();    // the position of the next request to be published
+	private final AtomicLong tail = new AtomicLong();    // the position of the next request to be taken
+
+	private volatile Thread waitingProducer;
+	private final Queue<Thread> waitingConsumers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Create a ring holding at least this many requests, the size is rounded up to a power of 2
+	 */
+	public RequestRing(int capacity) {
+
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+
+	}
+
+	/**
+	 * Publish the request, waiting while the ring is full.  Only one thread may call this at a time.  Returns false if the
+	 * ring is still full after the wait, so the caller can see if it should give up.
+	 */
+	protected boolean offer(BulkRequest request) {
+
+		long position = head.get();
+
+		if (position - tail.get() > mask) {
+			waitingProducer = Thread.currentThread();
+			if (position - tail.get() > mask) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+			waitingProducer = null;
+
+			if (position - tail.get() > mask) {
+				return false;
+			}
+		}
+
+		slots.set((int) position & mask, request);
+		head.set(position + 1);
+
+		// wake a consumer waiting for a request
+		Thread consumer = waitingConsumers.poll();
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Take the next request or null if there isn't one
+	 */
+	protected BulkRequest poll() {
+
+		while (true) {
+
+			long position = tail.get();
+			if (position == head.get()) {
+				return null;
+			}
+
+			BulkRequest request = slots.get((int) position & mask);
+
+			if (tail.compareAndSet(position, position + 1)) {
+
+				// wake the producer if it is waiting for room
+				Thread producer = waitingProducer;
+				if (producer != null) {
+					LockSupport.unpark(producer);
+				}
+
+				return request;
+			}
+		}
+
+	}
+
+	/**
+	 * Park the calling consumer until a request is published or it is woken
+	 */
+	protected void await() {
+
+		Thread me = Thread.currentThread();
+
+		waitingConsumers.add(me);
+		if (isEmpty()) {
+			LockSupport.parkNanos(this, PARK_NANOS);
+		}
+		waitingConsumers.remove(me);
+
+	}
+
+	/**
+	 * Wake all the waiting consumers
+	 */
+	protected void wakeAll() {
+
+		for (Thread consumer: waitingConsumers) {
+			LockSupport.unpark(consumer);
+		}
+
+	}
+
+	protected boolean isEmpty() {
+		return tail.get() == head.get();
+	}
+
+}
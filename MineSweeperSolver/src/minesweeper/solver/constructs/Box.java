@@ -16,6 +16,13 @@ import minesweeper.structure.Location;
 
 public class Box {
 
+	/**
+	 * Calculates the tally of a box, which is only done when the tally is asked for
+	 */
+	public interface TallyCalculator {
+		public BigInteger calculate();
+	}
+	
 	final private List<Witness> adjWitnesses;
 	final private List<Square> squares = new ArrayList<>();
 	
@@ -37,6 +44,7 @@ public class Box {
 	private int edgeLength;
 	private BigDecimal safety;
 	private BigInteger tally = BigInteger.ZERO;
+	private TallyCalculator tallyCalculator;   // when set the tally is calculated the first time it is asked for
 	//private BigInteger tileTally = BigInteger.ZERO;
 	
 	public Box(Square square, int uid) {
@@ -255,10 +263,22 @@ public class Box {
 	
 	public void setTally(BigInteger tally) {
 		this.tally = tally;
+		this.tallyCalculator = null;
 		//this.tileTally = tally.divide(BigInteger.valueOf(this.squares.size()));
 	}
 	
+	/**
+	 * The tally isn't calculated until it is asked for
+	 */
+	public void setTally(TallyCalculator calculator) {
+		this.tally = null;
+		this.tallyCalculator = calculator;
+	}
+	
 	public BigInteger getTally() {
+		if (this.tally == null) {
+			this.tally = tallyCalculator.calculate();
+		}
 		return this.tally;
 	}
 	
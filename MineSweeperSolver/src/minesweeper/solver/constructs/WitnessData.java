@@ -19,5 +19,7 @@ public class WitnessData {
     public int witnessGood;
     public int currentFlags;
     public boolean alwaysSatisfied;
+    public int value;         // the number shown by the witness
+    public long[] mask;       // bit mask of the squares being analysed which are adjacent to the witness
     
 }
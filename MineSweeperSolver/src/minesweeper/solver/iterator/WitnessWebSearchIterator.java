@@ -0,0 +1,280 @@
+package minesweeper.solver.iterator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import minesweeper.solver.WitnessWeb;
+import minesweeper.solver.constructs.Square;
+import minesweeper.solver.constructs.Witness;
+import minesweeper.structure.Location;
+
+/**
+ * An iterator which places the mines on the witness web one square at a time, depth first, checking each witness as it goes.
+ * A branch is abandoned as soon as a witness has too many mines or can no longer get enough, so only valid solutions are returned.
+ *
+ * The squares are in the same order as the {@link WitnessWebIterator} and the solutions are returned in the same order it would find them.
+ */
+public class WitnessWebSearchIterator extends Iterator {
+
+	private final static int UNDECIDED = 0;
+	private final static int MINE = 1;
+	private final static int CLEAR = 2;
+
+	private final int[] sample;
+	private final List<Location> location;
+
+	private final int[][] squareWitnesses;   // the witnesses adjacent to each square
+	private final int[] witnessMines;        // the mines each witness needs
+	private final boolean[] witnessExact;    // when true the witness needs exactly its mines, otherwise it can't have more
+	private final int[] placed;              // mines placed next to each witness so far
+	private final int[] undecided;           // squares next to each witness not yet decided
+
+	private final int[] decision;            // the decision made for each square
+	private final int locked;                // the number of squares at the start whose decision can't change
+
+	private final Set<Location> exactWitnesses = new HashSet<>();
+
+	private int depth = 0;                   // the number of squares decided
+	private int minesPlaced = 0;
+	private boolean backtrack = false;
+	private boolean done = false;
+
+	private int iterationsDone = 0;
+
+	public WitnessWebSearchIterator(WitnessWeb web, int mines) {
+		this(web, mines, new boolean[0]);
+	}
+
+	/**
+	 * Create an iterator with the first squares locked, true for a mine and false for a clear.  Iterators with different
+	 * prefixes don't overlap, which allows the search to be split between iterators.
+	 */
+	public WitnessWebSearchIterator(WitnessWeb web, int mines, boolean[] prefix) {
+		super(mines, web.getSquares().size());
+
+		sample = new int[mines];
+
+		// the squares of the independent witnesses come first and then the rest
+		List<Location> loc = new ArrayList<>();
+		Set<Location> onList = new HashSet<>();
+		for (Witness w: web.getIndependentWitnesses()) {
+			loc.addAll(w.getSquares());
+			onList.addAll(w.getSquares());
+		}
+		for (Square squ: web.getSquares()) {
+			if (onList.add(squ)) {
+				loc.add(squ);
+			}
+		}
+		location = loc;
+
+		Map<Location, Integer> index = new HashMap<>();
+		for (int i=0; i < location.size(); i++) {
+			index.put(location.get(i), i);
+		}
+
+		// independent witnesses are always exactly satisfied by the web's squares, as are witnesses with no squares off the web
+		for (Witness w: web.getIndependentWitnesses()) {
+			exactWitnesses.add(w);
+		}
+
+		List<Witness> witnesses = web.getPrunedWitnesses();
+		witnessMines = new int[witnesses.size()];
+		witnessExact = new boolean[witnesses.size()];
+		placed = new int[witnesses.size()];
+		undecided = new int[witnesses.size()];
+
+		List<List<Integer>> adjacent = new ArrayList<>(location.size());
+		for (int i=0; i < location.size(); i++) {
+			adjacent.add(new ArrayList<>());
+		}
+
+		for (int i=0; i < witnesses.size(); i++) {
+			Witness w = witnesses.get(i);
+			if (web.isContained(w)) {
+				exactWitnesses.add(w);
+			}
+			witnessMines[i] = w.getMines();
+			witnessExact[i] = exactWitnesses.contains(w);
+			undecided[i] = w.getSquares().size();
+			for (Square squ: w.getSquares()) {
+				adjacent.get(index.get(squ)).add(i);
+			}
+		}
+
+		squareWitnesses = new int[location.size()][];
+		for (int i=0; i < location.size(); i++) {
+			List<Integer> adj = adjacent.get(i);
+			squareWitnesses[i] = new int[adj.size()];
+			for (int j=0; j < adj.size(); j++) {
+				squareWitnesses[i][j] = adj.get(j);
+			}
+		}
+
+		decision = new int[location.size()];
+		locked = prefix.length;
+
+		// place the locked squares, if they can't be placed then there are no solutions
+		for (int i=0; i < locked; i++) {
+			if (prefix[i] && canMine(i)) {
+				place(i, true);
+			} else if (!prefix[i] && canClear(i)) {
+				place(i, false);
+			} else {
+				done = true;
+				break;
+			}
+		}
+
+	}
+
+	@Override
+	public int[] getSample(int start) {
+
+		if (done) {
+			return null;
+		}
+
+		while (true) {
+
+			if (backtrack) {
+
+				depth--;
+				if (depth < locked) {
+					done = true;
+					return null;
+				}
+
+				if (decision[depth] == MINE) {
+					undo(depth, true);
+					// having tried a mine here, now try it clear
+					if (canClear(depth)) {
+						place(depth, false);
+						backtrack = false;
+					}
+				} else {
+					undo(depth, false);
+				}
+
+			} else if (depth == location.size()) {
+
+				// every square is decided, so this is a solution
+				int next = 0;
+				for (int i=0; i < decision.length; i++) {
+					if (decision[i] == MINE) {
+						sample[next++] = i;
+					}
+				}
+
+				// next time we continue from here
+				backtrack = true;
+				iterationsDone++;
+
+				return sample;
+
+			} else if (canMine(depth)) {
+				place(depth, true);
+			} else if (canClear(depth)) {
+				place(depth, false);
+			} else {
+				backtrack = true;
+			}
+
+		}
+
+	}
+
+	// a mine can go here if there are mines left and no adjacent witness already has all its mines
+	private boolean canMine(int square) {
+
+		if (minesPlaced == numberBalls) {
+			return false;
+		}
+
+		for (int w: squareWitnesses[square]) {
+			if (placed[w] == witnessMines[w]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	// this can be clear if the mines left still fit in the remaining squares and every adjacent exact witness can still get its mines
+	private boolean canClear(int square) {
+
+		if (numberBalls - minesPlaced > location.size() - square - 1) {
+			return false;
+		}
+
+		for (int w: squareWitnesses[square]) {
+			if (witnessExact[w] && placed[w] + undecided[w] - 1 < witnessMines[w]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void place(int square, boolean mine) {
+
+		for (int w: squareWitnesses[square]) {
+			undecided[w]--;
+			if (mine) {
+				placed[w]++;
+			}
+		}
+		if (mine) {
+			minesPlaced++;
+			decision[square] = MINE;
+		} else {
+			decision[square] = CLEAR;
+		}
+
+		depth++;
+	}
+
+	private void undo(int square, boolean mine) {
+
+		for (int w: squareWitnesses[square]) {
+			undecided[w]++;
+			if (mine) {
+				placed[w]--;
+			}
+		}
+		if (mine) {
+			minesPlaced--;
+		}
+		decision[square] = UNDECIDED;
+
+	}
+
+	/**
+	 * False if the locked squares can't be part of a solution
+	 */
+	public boolean isPossible() {
+		return !done;
+	}
+
+	public List<Location> getLocations() {
+		return location;
+	}
+
+	/**
+	 * The number of solutions found so far
+	 */
+	public int getIterations() {
+		return iterationsDone;
+	}
+
+	// every exact witness has exactly the correct number of mines around it in the solutions this iterator returns
+	@Override
+	public boolean witnessAlwaysSatisfied(Location l) {
+		return exactWitnesses.contains(l);
+	}
+
+}
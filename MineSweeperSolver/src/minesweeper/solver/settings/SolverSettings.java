@@ -51,6 +51,10 @@ public class SolverSettings {
     
     protected boolean singleThread = false;
     
+    protected long moveTimeLimit = 0;   // milliseconds allowed to find each move, zero for no limit
+    protected long bruteForceTimeLimit = 0;   // milliseconds allowed for an anytime deep analysis, zero to analyse in a single pass
+    protected boolean logSpaceProbability = false;
+    
     private boolean locked;
     
     public SolverSettings lockSettings() {
@@ -134,6 +138,42 @@ public class SolverSettings {
     	return this;
     }
     
+    /**
+     * The milliseconds the solver can spend on a move before returning the best move found so far, zero for no limit
+     */
+    public SolverSettings setMoveTimeLimit(long moveTimeLimit) {
+    	
+    	if (!locked) {
+        	this.moveTimeLimit = moveTimeLimit;
+    	}
+ 
+    	return this;
+    }
+    
+    /**
+     * The milliseconds the brute force deep analysis can spend deepening its tree before using the best move found so far, zero to analyse in a single pass
+     */
+    public SolverSettings setBruteForceTimeLimit(long bruteForceTimeLimit) {
+    	
+    	if (!locked) {
+        	this.bruteForceTimeLimit = bruteForceTimeLimit;
+    	}
+ 
+    	return this;
+    }
+    
+    /**
+     * Calculate the probability engine's safeties with log-space doubles, falling back to exact arithmetic when two safeties are too close to tell apart
+     */
+    public SolverSettings setLogSpaceProbability(boolean logSpaceProbability) {
+    	
+    	if (!locked) {
+        	this.logSpaceProbability = logSpaceProbability;
+    	}
+ 
+    	return this;
+    }
+    
 	public SolverSettings setGuessMethod(GuessMethod guessMethod) {
 		
     	if (!locked) {
@@ -238,6 +278,18 @@ public class SolverSettings {
 		return singleThread;
 	}	
 	
+	public long getMoveTimeLimit() {
+		return moveTimeLimit;
+	}
+	
+	public long getBruteForceTimeLimit() {
+		return bruteForceTimeLimit;
+	}
+	
+	public boolean isLogSpaceProbability() {
+		return logSpaceProbability;
+	}
+	
 	/*
 	public boolean isExperimentalScoring() {
 		return this.experimentalScoring;
@@ -3,8 +3,11 @@ import java.math.BigInteger;
 
 public class Binomial {
 
+	// the sieve starts this big and is rebuilt twice as big, up to the maximum, when larger binomials are needed
+	private final static int SIEVE_START = 1024;
+	
 	private final int max;
-	private final PrimeSieve ps;
+	private volatile PrimeSieve ps;
 	
 	private final BigInteger[][] binomialLookup;
 	private final int lookupLimit;
@@ -13,8 +16,6 @@ public class Binomial {
 		
 		this.max = max;
 		
-		ps = new PrimeSieve(this.max);
-		
 		if (lookup < 10) {
 			lookup = 10;
 		}
@@ -86,6 +87,29 @@ public class Binomial {
     }    
 	
 	
+	// a sieve holding the primes up to at least n
+	private PrimeSieve getPrimeSieve(int n) {
+		
+		PrimeSieve sieve = ps;
+		if (sieve == null || sieve.getMax() < n) {
+			synchronized (this) {
+				sieve = ps;
+				if (sieve == null || sieve.getMax() < n) {
+					int size;
+					if (sieve == null) {
+						size = Math.max(n, SIEVE_START);
+					} else {
+						size = Math.max(n, sieve.getMax() * 2);
+					}
+					sieve = new PrimeSieve(Math.min(max, size));
+					ps = sieve;
+				}
+			}
+		}
+		
+		return sieve;
+	}
+	
 	private BigInteger combinationLarge(int k, int n) throws Exception {
 
 		if ((k == 0) || (k == n)) return BigInteger.ONE;
@@ -103,7 +127,7 @@ public class Binomial {
 		BigInteger result = BigInteger.ONE;
 
 
-		for (int prime : ps.getPrimesIterable(2, n)) {
+		for (int prime : getPrimeSieve(n).getPrimesIterable(2, n)) {
 
 			if (prime > nk) {
 				result = result.multiply(BigInteger.valueOf(prime));
@@ -1,64 +1,78 @@
 package minesweeper.solver.utility;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A cache of large binomial coefficients which can be shared by all the threads.  The entries are indexed by (n, k) and
+ * a coefficient next to one in the cache is derived from it rather than being calculated.  When the cache is full the least
+ * recently used entries are removed.
+ * 
+ * It also holds columns of binomials C(n, k) over a range of k, which are built from the ratio between neighbouring k.
+ */
 public class BinomialCache  {
 
-	private class BinomialEntry implements Comparable<BinomialEntry> {
-		final private int n;
-		final private int k;
+	// the most columns held, when there are more the least recently used is removed
+	private final static int MAX_COLUMNS = 32;
+
+	// the binomials C(n, k) for k from low to low + length - 1
+	private class Column {
+		private int low;
+		private BigInteger[] values = new BigInteger[0];
+
+		private volatile long lastUsed;
+	}
+
+	private class BinomialEntry {
+		final private long key;
 		final private BigInteger bco;
-		
-		private long lastUsed;
-		
-		private BinomialEntry(int k, int n, BigInteger bco) {
-			this.k = k;
-			this.n = n;
+
+		private volatile long lastUsed;
+
+		private BinomialEntry(long key, BigInteger bco) {
+			this.key = key;
 			this.bco = bco;
 		}
 
-		@Override
-		public int compareTo(BinomialEntry o) {
-			if (lastUsed < o.lastUsed) {
-				return -1;
-			} else if (lastUsed > o.lastUsed) {
-				return 1;
-			} else {
-				return 0;
-			}
-		}
-		
 	}
-	private BinomialEntry[] cache;
-	private int start = -1;
-	private long useCount = 0;
-
-	private int cacheHits = 0;
-	private int cacheStored = 0;
-	private int sumDepth = 0;
-	private int nearMissHits = 0;
-	private int fullCalc = 0;
-	
+
+	private final Map<Long, BinomialEntry> cache;
+	private final Map<Integer, Column> columns = new ConcurrentHashMap<>();
+	private final AtomicLong useCount = new AtomicLong();
+	private final AtomicBoolean compressing = new AtomicBoolean(false);
+
+	private final AtomicInteger cacheHits = new AtomicInteger();
+	private final AtomicInteger cacheStored = new AtomicInteger();
+	private final AtomicInteger nearMissHits = new AtomicInteger();
+	private final AtomicInteger fullCalc = new AtomicInteger();
+	private final AtomicInteger columnsBuilt = new AtomicInteger();
+
 	private final int cacheSize;
 	private final int cacheFreshold;
 	private final int compressRemoval;
-	
+
 	private final Binomial binomialEngine;
-	
+
 	public BinomialCache(int cacheSize, int cacheFreshold, Binomial binomialEngine) {
-		
+
 		this.cacheSize = cacheSize;
 		this.cacheFreshold = cacheFreshold;
 		this.binomialEngine = binomialEngine;
 		this.compressRemoval = cacheSize / 2;
-		
-		this.cache = new BinomialEntry[this.cacheSize];
-		
+
+		this.cache = new ConcurrentHashMap<>(cacheSize * 2);
+
 	}
 
 	public BigInteger getBinomial(int k, int n) {
-		
+
 		// if the binomial is below the size freshold then just go get it
 		if (n <= cacheFreshold) {
 			try {
@@ -68,103 +82,197 @@ public class BinomialCache  {
 				return BigInteger.ONE;
 			}
 		}
-		
-		useCount++;
-		
-		// if there are some details in the cache then search it
-		BinomialEntry nearMissK = null;
-		BinomialEntry nearMissN = null;
-		if (start != -1) {
-			int tally = 0;
-			for (int i = start; i >= 0; i--) {
-				BinomialEntry entry = cache[i];
-				tally++;
-				if (entry.n == n && entry.k == k) {
-					entry.lastUsed = useCount;
-					cacheHits++;
-					sumDepth = sumDepth + tally;
-					
-					//if (cacheHits % 250 == 0) {
-					//	Arrays.sort(cache, 0, start);
-					//}
-					
-					return entry.bco;
-				}
-				if (entry.n == n && entry.k == k + 1) {
-					nearMissK = entry;
-				}
-				if (entry.n == n + 1 && entry.k == k) {
-					nearMissN = entry;
-				}
-			}
+
+		long used = useCount.incrementAndGet();
+
+		BinomialEntry entry = cache.get(key(k, n));
+		if (entry != null) {
+			entry.lastUsed = used;
+			cacheHits.incrementAndGet();
+			return entry.bco;
 		}
 
-		BigInteger b;
-		if (nearMissK != null) {  // one below a cached entry we can do quickly
-			b = nearMissK.bco.multiply(BigInteger.valueOf(nearMissK.k)).divide(BigInteger.valueOf(nearMissK.n - nearMissK.k + 1));
-			nearMissHits++;
-			
-		} else if (nearMissN != null) {  // one below a cached entry we can do quickly
-			b = nearMissN.bco.multiply(BigInteger.valueOf(nearMissN.n - nearMissN.k)).divide(BigInteger.valueOf(nearMissN.n));
-			nearMissHits++;
-			
+		BigInteger b = fromNearMiss(k, n);
+		if (b != null) {
+			nearMissHits.incrementAndGet();
+
 		} else {  		// not in the cache, so generate it
 			try {
 				b = binomialEngine.generate(k, n);
-				fullCalc++;
+				fullCalc.incrementAndGet();
 			} catch (Exception e) {
 				e.printStackTrace();
 				b = BigInteger.ONE;
-			}			
+			}
 		}
-		
-		if (start == cacheSize - 1) {
+
+		BinomialEntry be = new BinomialEntry(key(k, n), b);
+		be.lastUsed = used;
+		if (cache.putIfAbsent(be.key, be) == null) {
+			cacheStored.incrementAndGet();
+		}
+
+		if (cache.size() > cacheSize) {
 			compressCache();
-		} 
-		//else if (useCount % 50 == 0) {
-		//	Arrays.sort(cache, 0, start);
-		//}
-
-		start++;
-		BinomialEntry be = new BinomialEntry(k, n, b);
-		be.lastUsed = useCount;
-		cacheStored++;
-		
-		cache[start] = be;
-		
+		}
+
 		return b;
 	}
-	
-	// remove the least used binomials from the cache
+
+	/**
+	 * The binomials C(n, k) for k from kMin to kMax.  The column for n is kept and extended when a wider range is asked for.
+	 */
+	public BigInteger[] getColumn(int n, int kMin, int kMax) {
+
+		Column column = columns.get(n);
+		if (column == null) {
+			Column newColumn = new Column();
+			column = columns.putIfAbsent(n, newColumn);
+			if (column == null) {
+				column = newColumn;
+				columnsBuilt.incrementAndGet();
+				if (columns.size() > MAX_COLUMNS) {
+					removeOldestColumn();
+				}
+			}
+		}
+		column.lastUsed = useCount.incrementAndGet();
+
+		BigInteger[] result = new BigInteger[kMax - kMin + 1];
+		synchronized (column) {
+			extendColumn(column, n, kMin, kMax);
+			System.arraycopy(column.values, kMin - column.low, result, 0, result.length);
+		}
+
+		return result;
+	}
+
+	// make sure the column covers kMin to kMax, each new value is its neighbour multiplied by their ratio
+	private void extendColumn(Column column, int n, int kMin, int kMax) {
+
+		if (column.values.length == 0) {
+			column.low = kMin;
+			column.values = new BigInteger[] {getBinomial(kMin, n)};
+		}
+
+		int low = Math.min(kMin, column.low);
+		int high = Math.max(kMax, column.low + column.values.length - 1);
+		if (low == column.low && high == column.low + column.values.length - 1) {
+			return;
+		}
+
+		BigInteger[] values = new BigInteger[high - low + 1];
+		System.arraycopy(column.values, 0, values, column.low - low, column.values.length);
+
+		// C(n, k-1) = C(n, k) * k / (n-k+1)
+		for (int k = column.low - 1; k >= low; k--) {
+			values[k - low] = values[k + 1 - low].multiply(BigInteger.valueOf(k + 1)).divide(BigInteger.valueOf(n - k));
+		}
+
+		// C(n, k+1) = C(n, k) * (n-k) / (k+1)
+		for (int k = column.low + column.values.length; k <= high; k++) {
+			values[k - low] = values[k - 1 - low].multiply(BigInteger.valueOf(n - k + 1)).divide(BigInteger.valueOf(k));
+		}
+
+		column.low = low;
+		column.values = values;
+
+	}
+
+	private void removeOldestColumn() {
+
+		Integer oldest = null;
+		long oldestUsed = Long.MAX_VALUE;
+		for (Map.Entry<Integer, Column> entry: columns.entrySet()) {
+			if (entry.getValue().lastUsed < oldestUsed) {
+				oldestUsed = entry.getValue().lastUsed;
+				oldest = entry.getKey();
+			}
+		}
+
+		if (oldest != null) {
+			columns.remove(oldest);
+		}
+
+	}
+
+	// derive the binomial from one next to it in the cache, or null if none of them are there
+	private BigInteger fromNearMiss(int k, int n) {
+
+		BinomialEntry entry;
+
+		// (n, k+1) * (k+1) / (n-k)
+		if (k < n) {
+			entry = cache.get(key(k + 1, n));
+			if (entry != null) {
+				return entry.bco.multiply(BigInteger.valueOf(k + 1)).divide(BigInteger.valueOf(n - k));
+			}
+		}
+
+		// (n+1, k) * (n+1-k) / (n+1)
+		entry = cache.get(key(k, n + 1));
+		if (entry != null) {
+			return entry.bco.multiply(BigInteger.valueOf(n + 1 - k)).divide(BigInteger.valueOf(n + 1));
+		}
+
+		// (n, k-1) * (n-k+1) / k
+		if (k > 0) {
+			entry = cache.get(key(k - 1, n));
+			if (entry != null) {
+				return entry.bco.multiply(BigInteger.valueOf(n - k + 1)).divide(BigInteger.valueOf(k));
+			}
+		}
+
+		// (n-1, k) * n / (n-k)
+		if (k < n) {
+			entry = cache.get(key(k, n - 1));
+			if (entry != null) {
+				return entry.bco.multiply(BigInteger.valueOf(n)).divide(BigInteger.valueOf(n - k));
+			}
+		}
+
+		return null;
+	}
+
+	private long key(int k, int n) {
+		return ((long) n << 32) | (k & 0xFFFFFFFFL);
+	}
+
+	// remove the least recently used binomials from the cache, only one thread does this at a time
 	private void compressCache() {
-		
-		//System.out.print(Thread.currentThread().getName() + " Cache compressing...");
-		
-		Arrays.sort(cache);
-		
-		if (cache[0].lastUsed > cache[1].lastUsed) {
-			System.out.println("Sort order wrong!");
+
+		if (!compressing.compareAndSet(false, true)) {
+			return;
 		}
-		
-		for (int i=0; i < this.cacheSize - this.compressRemoval; i++) {
-			cache[i] = cache[i + this.compressRemoval];
+
+		try {
+			// the entries can be used while this is running, so work from a copy of when they were last used
+			List<BinomialEntry> entries = new ArrayList<>(cache.values());
+			long[] lastUsed = new long[entries.size()];
+			for (int i=0; i < lastUsed.length; i++) {
+				lastUsed[i] = entries.get(i).lastUsed;
+			}
+
+			long[] sorted = Arrays.copyOf(lastUsed, lastUsed.length);
+			Arrays.sort(sorted);
+			long oldest = sorted[Math.max(1, Math.min(this.compressRemoval, sorted.length)) - 1];
+
+			for (int i=0; i < lastUsed.length; i++) {
+				if (lastUsed[i] <= oldest) {
+					cache.remove(entries.get(i).key);
+				}
+			}
+		} finally {
+			compressing.set(false);
 		}
 
-		this.start = this.start - this.compressRemoval;
-		//System.out.println("Cache compressed ..." + this.start);
 	}
 
 	public void showStats() {
-		
-		int avgDepth = 0;
-		if (cacheHits != 0) {
-			avgDepth = sumDepth / cacheHits;
-		}
-		
-		
-		System.out.println(Thread.currentThread().getName() + " Cache stored: " + cacheStored + ", cache Hits: " + cacheHits + ", Near Miss Hits: " + nearMissHits 
-				+ ", Full Calculation: " + fullCalc + ", current entries: " + (start + 1) + ", avg depth: " + avgDepth);
+
+		System.out.println(Thread.currentThread().getName() + " Cache stored: " + cacheStored.get() + ", cache Hits: " + cacheHits.get() + ", Near Miss Hits: " + nearMissHits.get()
+				+ ", Full Calculation: " + fullCalc.get() + ", current entries: " + cache.size() + ", columns built: " + columnsBuilt.get());
 	}
 
-	
+
 }
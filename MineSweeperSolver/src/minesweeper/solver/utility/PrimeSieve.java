@@ -67,7 +67,7 @@ public class PrimeSieve {
 
 		final int rootN = (int) Math.floor(Math.sqrt(n));
 		
-		for (int i=2; i < rootN; i++) {
+		for (int i=2; i <= rootN; i++) {
 			
 			// if this is a prime number (not composite) then sieve the array
 			if (!composite[i]) {
@@ -83,6 +83,10 @@ public class PrimeSieve {
 
 	
 	
+	public int getMax() {
+		return max;
+	}
+	
 	public boolean isPrime(int n) throws Exception {
 		if (n <= 1 || n > max) {
 			throw new Exception("Test value " + n + " is out of range 2 - " + max);
@@ -8,7 +8,6 @@ import minesweeper.gamestate.MoveMethod;
 import minesweeper.solver.RolloutGenerator;
 import minesweeper.solver.Solver;
 import minesweeper.solver.settings.SolverSettings;
-import minesweeper.solver.utility.BinomialCache;
 import minesweeper.structure.Action;
 import minesweeper.structure.Location;
 
@@ -73,14 +72,11 @@ public class BulkRunner implements Runnable {
 		
 		Random seeder = new Random(seed);
 		
-		BinomialCache bc = new BinomialCache(5000, Solver.BINOMIAL_CACHE_LIMIT, Solver.binomialEngine);
-		
 		while (!stop && steps < maxSteps) {
 
 			GameStateModel gs = rollout.generateGame(seeder.nextLong(), safeTile);
 
 			Solver solver = new Solver(gs, preferences, false);
-			//solver.setBinomialCache(bc);
 			
 			gs.doAction(new Action(startLocation, Action.CLEAR));
 			int state = gs.getGameState();
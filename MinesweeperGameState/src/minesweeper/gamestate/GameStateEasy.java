@@ -59,7 +59,8 @@ public class GameStateEasy extends GameStateModelViewer {
         }
         
 		// create the tiles
-		Integer[] indices = new Integer[this.width * this.height - adjacent];
+		int count = this.width * this.height - adjacent;
+		int[] indices = tileBuffer(count);
 		
     	// find all the non-mine tile left
 		int index = 0;
@@ -74,7 +75,7 @@ public class GameStateEasy extends GameStateModelViewer {
             }
         }        
 
-		shuffle(indices, rng);
+		chooseMines(indices, count, this.mines, rng);
 		
 		// allocate the bombs and calculate the values
 		for (int i = 0; i < this.mines; i++) {
@@ -0,0 +1,29 @@
+package minesweeper.gamestate;
+
+/**
+ * Told about each change to the tiles of a {@link GameStateModel}, so a player can keep its view of the board up to date
+ * by only looking at the tiles which have changed.
+ */
+public interface GameStateListener {
+
+	/**
+	 * The tile at (x, y) has been revealed
+	 */
+	public void tileRevealed(int x, int y);
+
+	/**
+	 * The tile at (x, y) has been hidden again. This only happens when an external board didn't honour a clear.
+	 */
+	public void tileHidden(int x, int y);
+
+	/**
+	 * A flag has been placed on or removed from the tile at (x, y)
+	 */
+	public void flagChanged(int x, int y, boolean flagged);
+
+	/**
+	 * The tile at (x, y) was a mine and the game is lost
+	 */
+	public void exploded(int x, int y);
+
+}
@@ -9,6 +9,7 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import minesweeper.random.RNG;
 import minesweeper.settings.GameSettings;
@@ -38,6 +39,14 @@ abstract public class GameStateModel {
     protected final static int[] DX = {0, 1, 1, 1, 0, -1, -1, -1};
     protected final static int[] DY = {-1, -1, 0, 1, 1, 1, 0, -1};
     
+    // a work area for each thread to choose the mines in, so generating a board doesn't allocate
+    private final static ThreadLocal<int[]> TILES = new ThreadLocal<int[]>() {
+    	@Override
+    	protected int[] initialValue() {
+    		return new int[0];
+    	}
+    };
+    
     private long startTS = 0;
     private long finishTS = 0;
     
@@ -68,9 +77,13 @@ abstract public class GameStateModel {
     private int flagsPlaced = 0;
     
 
-    private final boolean[][] flag;
-    private final boolean[][] revealed;
-    private final boolean[][] is3BV;
+    // the flags, revealed tiles and 3BV tiles are held as bitsets with a bit for each tile, see tileIndex()
+    private final long[] flag;
+    private final long[] revealed;
+    private final long[] is3BV;
+    
+    // told about each tile which changes
+    private final List<GameStateListener> listeners = new CopyOnWriteArrayList<>();
     
     public GameStateModel(GameSettings gameSettings) {
     	this(gameSettings, 0);
@@ -83,11 +96,11 @@ abstract public class GameStateModel {
         this.mines = gameSettings.mines;
         this.seed = seed;
         
-        flag = new boolean[width][height];
+        flag = newBits(width * height);
         
-        revealed = new boolean[width][height];
+        revealed = newBits(width * height);
         
-        is3BV = new boolean[width][height];
+        is3BV = newBits(width * height);
         
         this.gameState = NOT_STARTED;
         
@@ -121,6 +134,14 @@ abstract public class GameStateModel {
     public void resign() {
     	finish(GameStateModel.LOST);
     }
+    
+    public void addGameStateListener(GameStateListener listener) {
+    	listeners.add(listener);
+    }
+    
+    public void removeGameStateListener(GameStateListener listener) {
+    	listeners.remove(listener);
+    }
 
     // returns false if the move is not allowed
     private boolean placeFlag(Location m) {
@@ -136,9 +157,9 @@ abstract public class GameStateModel {
         }
         
         // otherwise toggle the flag
-        flag[m.x][m.y] = !flag[m.x][m.y];
+        flipBit(flag, tileIndex(m.x, m.y));
         
-        if (flag[m.x][m.y]) {
+        if (testBit(flag, tileIndex(m.x, m.y))) {
             
             //if (board[m.x][m.y] != GameState.MINE) {
             //    System.out.println("DEBUG (" + m.x + "," + m.y + ") is not a mine!");
@@ -147,6 +168,7 @@ abstract public class GameStateModel {
         } else {
             flagsPlaced--;
         }
+        fireFlagChanged(m.x, m.y, testBit(flag, tileIndex(m.x, m.y)));
 
         // call this handle to allow extra logic to be added by the extending class
         placeFlagHandle(m);
@@ -177,7 +199,7 @@ abstract public class GameStateModel {
         }
         
         // can't reveal a location with a flag on it
-        if (flag[m.x][m.y]) {
+        if (testBit(flag, tileIndex(m.x, m.y))) {
             return false;
         }
         
@@ -205,17 +227,19 @@ abstract public class GameStateModel {
         // if we have revealed a mine we have lost
         if (mine) {
             finish(GameStateModel.LOST);
+            fireExploded(m.x, m.y);
             return true;
         }
 
         // if it wasn't a mine we have revealed one more square
-        if (!revealed[m.x][m.y]) {
-        	revealed[m.x][m.y] = true;
+        if (!testBit(revealed, tileIndex(m.x, m.y))) {
+        	setBit(revealed, tileIndex(m.x, m.y));
         	squaresRevealed++;
         	
-        	if (is3BV[m.x][m.y]) {  // if this was a 3BV tile then we've cleared one more 3BV in this game
+        	if (testBit(is3BV, tileIndex(m.x, m.y))) {  // if this was a 3BV tile then we've cleared one more 3BV in this game
         		cleared3BV++;
         	}
+        	fireRevealed(m.x, m.y);
         }
         
         
@@ -269,7 +293,7 @@ abstract public class GameStateModel {
         }
         
         // can't clear around a flag
-        if (flag[m.x][m.y]) {
+        if (testBit(flag, tileIndex(m.x, m.y))) {
             return false;
         }
 
@@ -313,7 +337,7 @@ abstract public class GameStateModel {
         
          for (int j=0; j < DX.length; j++) {
             if (x + DX[j] >= 0 && x + DX[j] < this.width && y + DY[j] >= 0 && y + DY[j] < this.height) {
-                if (flag[x+DX[j]][y+DY[j]]) {
+                if (testBit(flag, tileIndex(x + DX[j], y + DY[j]))) {
                     result++;
                 }
             }
@@ -375,8 +399,8 @@ abstract public class GameStateModel {
     // returns the board value at this location
     final public int query(Location m) {
         
-        if (!revealed[m.x][m.y]) {
-            if (flag[m.x][m.y]) {
+        if (!testBit(revealed, tileIndex(m.x, m.y))) {
+            if (testBit(flag, tileIndex(m.x, m.y))) {
                 return GameStateModel.FLAG;
             } else {
                 return GameStateModel.HIDDEN;
@@ -398,21 +422,22 @@ abstract public class GameStateModel {
     
     // allows a sub class to check what has been opened
     protected boolean isHidden(int x, int y) {
-    	return !revealed[x][y] && !flag[x][y];
+    	return !testBit(revealed, tileIndex(x, y)) && !testBit(flag, tileIndex(x, y));
     }
     
     
     // allows the sub class to confirm what has been revealed to it
     protected void setRevealed(int x, int y) {
      	
-        if (!revealed[x][y]) {
+        if (!testBit(revealed, tileIndex(x, y))) {
         	//System.out.println("Auto Reveal at (" + x + "," + y + ")");
-            revealed[x][y] = true;
+            setBit(revealed, tileIndex(x, y));
             squaresRevealed++;
             
-        	if (is3BV[x][y]) {  // if this was a 3BV tile then we've cleared one more 3BV in this game
+        	if (testBit(is3BV, tileIndex(x, y))) {  // if this was a 3BV tile then we've cleared one more 3BV in this game
         		cleared3BV++;
         	}
+        	fireRevealed(x, y);
         }
 
     }
@@ -421,14 +446,15 @@ abstract public class GameStateModel {
     // board like minesweeper X and it is noticed that for some reason the clear hasn't been honoured by the external board)
     protected void setHidden(int x, int y) {
      	
-        if (revealed[x][y]) {
+        if (testBit(revealed, tileIndex(x, y))) {
         	//System.out.println("Auto Reveal at (" + x + "," + y + ")");
-            revealed[x][y] = false;
+            clearBit(revealed, tileIndex(x, y));
             squaresRevealed--;
             
-        	if (is3BV[x][y]) {  // if this was a 3BV tile then ew've no longer cleared it
+        	if (testBit(is3BV, tileIndex(x, y))) {  // if this was a 3BV tile then ew've no longer cleared it
         		cleared3BV--;
         	}
+        	fireHidden(x, y);
         }
 
     }
@@ -436,17 +462,18 @@ abstract public class GameStateModel {
     
     // allows a sub class to check what has been marked with a flag
     protected boolean isFlag(int x, int y) {
-    	return flag[x][y];
+    	return testBit(flag, tileIndex(x, y));
     }
     
     
     // allows the sub class to confirm that a flag has been revealed to it
     protected void setFlag(int x, int y) {
         
-        if (!flag[x][y]) {
+        if (!testBit(flag, tileIndex(x, y))) {
         	//System.out.println("Auto flag set at (" + x + "," + y + ")");
-        	flag[x][y] = true;
+        	setBit(flag, tileIndex(x, y));
             flagsPlaced++;
+            fireFlagChanged(x, y, true);
         }
 
     }
@@ -455,49 +482,78 @@ abstract public class GameStateModel {
     // board like minesweeper X and it is noticed that a flag has been removed external to the solver)
     protected void removeFlag(int x, int y) {
         
-        if (flag[x][y]) {
+        if (testBit(flag, tileIndex(x, y))) {
         	//System.out.println("Auto flag set at (" + x + "," + y + ")");
-        	flag[x][y] = false;
+        	clearBit(flag, tileIndex(x, y));
             flagsPlaced--;
+            fireFlagChanged(x, y, false);
         }
 
     }
     
+    private void fireRevealed(int x, int y) {
+    	for (GameStateListener listener: listeners) {
+    		listener.tileRevealed(x, y);
+    	}
+    }
+    
+    private void fireHidden(int x, int y) {
+    	for (GameStateListener listener: listeners) {
+    		listener.tileHidden(x, y);
+    	}
+    }
+    
+    private void fireFlagChanged(int x, int y, boolean flagged) {
+    	for (GameStateListener listener: listeners) {
+    		listener.flagChanged(x, y, flagged);
+    	}
+    }
+    
+    private void fireExploded(int x, int y) {
+    	for (GameStateListener listener: listeners) {
+    		listener.exploded(x, y);
+    	}
+    }
+    
     protected void explode(Location loc) {
     	
-    	boolean[][] done = new boolean[width][height];
+    	long[] done = newBits(width * height);
     	
-    	List<Location> interiorList = new ArrayList<>();
+    	// the tiles still to have their neighbours revealed, held as tile indices
+    	int[] interior = new int[width * height];
+    	int found = 0;
     	
-        // add this location to the interior array list
-        done[loc.x][loc.y] = true;
-        interiorList.add(loc);
+        // add this location to the interior list
+    	int start = tileIndex(loc.x, loc.y);
+        setBit(done, start);
+        interior[found++] = start;
         
         int processFrom = 0;
         
-        while (processFrom < interiorList.size()) {
+        while (processFrom < found) {
         	
         	// get the current location to process surrounding squares
-        	Location cl = interiorList.get(processFrom);
+        	int cx = interior[processFrom] % width;
+        	int cy = interior[processFrom] / width;
         	
             for (int i=0; i < DX.length; i++) {
                 
-                int x1 = cl.x + DX[i];
-                int y1 = cl.y + DY[i];
+                int x1 = cx + DX[i];
+                int y1 = cy + DY[i];
                 
                 // check each of the surrounding squares which haven't already been checked
                 if (x1 >= 0 && x1 < width && y1 >= 0 && y1 < height) {
                 	
-                	Location l = new Location(x1, y1);
+                	int index = tileIndex(x1, y1);
                 	
-                	if (!done[x1][y1] && query(l) == GameStateModel.HIDDEN) {
+                	if (!testBit(done, index) && isHidden(x1, y1)) {
                 		
-                		done[x1][y1] = true;
+                		setBit(done, index);
                     	setRevealed(x1,y1);
  
                         // if this square is also a zero then add it to the list of locations to be exploded
-                        if (query(l) == 0) {
-                        	interiorList.add(l);
+                        if (queryHandle(x1, y1) == 0) {
+                        	interior[found++] = index;
                         }                		
                 	}
 
@@ -544,48 +600,48 @@ abstract public class GameStateModel {
     	
     	total3BV = 0;
     	
-    	boolean[][] done = new boolean[width][height];
+    	long[] done = newBits(width * height);
     	
-    	List<Location> interiorList = new ArrayList<>();
+    	// the zeros still to have their neighbours checked, held as tile indices
+    	int[] interior = new int[width * height];
     	
     	// find all the areas enclosing zeros
         for (int i=0; i < width; i++) {
             for (int j=0; j < height; j++) {
-                //Location start = new Location(i,j);
-                if (!done[i][j] && queryHandle(i, j) != GameStateModel.MINE && queryHandle(i, j) == 0) {
+                if (!testBit(done, tileIndex(i, j)) && queryHandle(i, j) == 0) {
 
-                	//System.out.println("found zeros at " + start.display());
                 	total3BV++;
-                	is3BV[i][j] = true;
+                	setBit(is3BV, tileIndex(i, j));
                 	
                     int processFrom = 0;
-                    interiorList.clear();
-                    interiorList.add(new Location(i,j));
+                    int found = 0;
+                    interior[found++] = tileIndex(i, j);
                     
-                    done[i][j] = true;
+                    setBit(done, tileIndex(i, j));
                     
-                    while (processFrom < interiorList.size()) {
+                    while (processFrom < found) {
                     	
                     	// get the current location to process surrounding squares
-                    	Location cl = interiorList.get(processFrom);
+                    	int cx = interior[processFrom] % width;
+                    	int cy = interior[processFrom] / width;
                     	
                         for (int k=0; k < DX.length; k++) {
                             
-                            int x1 = cl.x + DX[k];
-                            int y1 = cl.y + DY[k];
+                            int x1 = cx + DX[k];
+                            int y1 = cy + DY[k];
                             
                             // check each of the surrounding squares which haven't already been checked
                             if (x1 >= 0 && x1 < width && y1 >= 0 && y1 < height) {
                             	
-                            	//Location l = new Location(x1, y1);
+                            	int index = tileIndex(x1, y1);
                             	
-                            	if (!done[x1][y1]) {
+                            	if (!testBit(done, index)) {
                             		
-                            		done[x1][y1] = true;
+                            		setBit(done, index);
 
                                     // if this square is also a zero then add it to the list of locations to be exploded
-                                    if (queryHandle(x1, y1) != GameStateModel.MINE && queryHandle(x1, y1) == 0) {
-                                    	interiorList.add(new Location(x1, y1));
+                                    if (queryHandle(x1, y1) == 0) {
+                                    	interior[found++] = index;
                                     }                		
                             	}
 
@@ -595,7 +651,6 @@ abstract public class GameStateModel {
                         processFrom++;
                     }    	  
                     
-                    //System.out.println("Zeros = " + interiorList.size());
                 }
             }
         }        
@@ -604,9 +659,9 @@ abstract public class GameStateModel {
         for (int i=0; i < width; i++) {
             for (int j=0; j < height; j++) {
                 //Location start = new Location(i,j);
-                if (queryHandle(i, j) != GameStateModel.MINE && !done[i][j]) {
+                if (queryHandle(i, j) != GameStateModel.MINE && !testBit(done, tileIndex(i, j))) {
                 	//System.out.println("found non-edge " + start.display());
-                   	is3BV[i][j] = true;
+                   	setBit(is3BV, tileIndex(i, j));
                 	total3BV++;
                 }
             }
@@ -614,6 +669,34 @@ abstract public class GameStateModel {
     	
     }
     
+    /**
+     * The position of the tile in the bitsets, the tiles are numbered along each row in turn
+     */
+    final protected int tileIndex(int x, int y) {
+    	return y * width + x;
+    }
+    
+    // a bitset large enough to hold this many bits
+    static protected long[] newBits(int size) {
+    	return new long[(size + 63) >>> 6];
+    }
+    
+    static protected boolean testBit(long[] bits, int index) {
+    	return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+    
+    static protected void setBit(long[] bits, int index) {
+    	bits[index >>> 6] |= 1L << index;
+    }
+    
+    static protected void clearBit(long[] bits, int index) {
+    	bits[index >>> 6] &= ~(1L << index);
+    }
+    
+    static protected void flipBit(long[] bits, int index) {
+    	bits[index >>> 6] ^= 1L << index;
+    }
+    
     // used to shuffle an array
     static public <T>  void shuffle(T[] a, RNG rng) {
 
@@ -628,6 +711,36 @@ abstract public class GameStateModel {
     }    
     
     
+    /**
+     * A buffer of at least this size, owned by the current thread, to build the list of tiles to choose the mines from
+     */
+    static protected int[] tileBuffer(int size) {
+    	
+    	int[] tiles = TILES.get();
+    	if (tiles.length < size) {
+    		tiles = new int[size];
+    		TILES.set(tiles);
+    	}
+    	
+    	return tiles;
+    }
+    
+    /**
+     * Moves the tiles chosen to be mines into the first 'mines' places of the first 'count' tiles. The same tiles are chosen
+     * as using shuffle() and taking the first 'mines', but the shuffle stops once the tiles from 'mines' onwards are settled since the
+     * swaps left would only reorder the mines.
+     */
+    static protected void chooseMines(int[] tiles, int count, int mines, RNG rng) {
+    	
+        for (int i = count - 1; i >= mines && i > 0; i--) {
+            int j = (int) rng.random((i + 1));
+            int x = tiles[i];
+            tiles[i] = tiles[j];
+            tiles[j] = x;
+        }
+    	
+    }
+    
     /**
      * Returns the recommended initial start location for this game type.
      * Defaults to the top left corner.
@@ -23,7 +23,9 @@ import minesweeper.structure.Location;
  */
 public class GameStateStandard extends GameStateModelViewer {
     
-    private final int[][] board;
+    // the mines as a bitset and the number of mines next to each tile, both indexed by tileIndex()
+    private final long[] mine;
+    private final byte[] adjacent;
     
     private RNG rng;
     
@@ -35,7 +37,8 @@ public class GameStateStandard extends GameStateModelViewer {
     public GameStateStandard(GameSettings gameSettings, long seed) {
         super(gameSettings, seed);
         
-        this.board = new int[width][height];
+        this.mine = newBits(width * height);
+        this.adjacent = new byte[width * height];
         
         this.rng = DefaultRNG.getRNG(seed); 
     }
@@ -51,8 +54,7 @@ public class GameStateStandard extends GameStateModelViewer {
     	List<Action> actions = new ArrayList<>();
     	 
     	for (Location loc: locs) {
-    		int value = this.board[loc.x][loc.y];
-    		if (value == GameStateModel.MINE) {
+    		if (isMine(loc.x, loc.y)) {
     			actions.add(new Action(loc, Action.FLAG, MoveMethod.CHEAT, "", BigDecimal.ONE));
     		} else {
     			actions.add(new Action(loc, Action.CLEAR, MoveMethod.CHEAT, "", BigDecimal.ONE));
@@ -68,7 +70,8 @@ public class GameStateStandard extends GameStateModelViewer {
     protected void startHandle(Location m) {
         
 		// create the tiles
-		Integer[] indices = new Integer[this.width * this.height - 1];
+		int count = this.width * this.height - 1;
+		int[] indices = tileBuffer(count);
 		
     	// find all the non-mine tile left
 		int index = 0;
@@ -83,7 +86,7 @@ public class GameStateStandard extends GameStateModelViewer {
             }
         }        
 
-		shuffle(indices, rng);
+		chooseMines(indices, count, this.mines, rng);
 		
 		// allocate the bombs and calculate the values
 		for (int i = 0; i < this.mines; i++) {
@@ -92,14 +95,12 @@ public class GameStateStandard extends GameStateModelViewer {
 			int x = tile % this.width;
 			int y = tile / this.width;
 
-            board[x][y] = GameStateModel.MINE;
+            setBit(mine, tile);
             
             // tell all the surrounding squares they are next to a mine
             for (int j=0; j < DX.length; j++) {
                 if (x + DX[j] >= 0 && x + DX[j] < this.width && y + DY[j] >= 0 && y + DY[j] < this.height) {
-                    if (board[x+DX[j]][y+DY[j]] != GameStateModel.MINE) {
-                        board[x+DX[j]][y+DY[j]]++;
-                    }
+                    adjacent[tileIndex(x + DX[j], y + DY[j])]++;
                 }
             }
 		}
@@ -146,7 +147,15 @@ public class GameStateStandard extends GameStateModelViewer {
     
     @Override
     protected int queryHandle(int x, int y) {
-        return board[x][y];
+    	int index = tileIndex(x, y);
+    	if (testBit(mine, index)) {
+    		return GameStateModel.MINE;
+    	}
+        return adjacent[index];
+    }
+    
+    private boolean isMine(int x, int y) {
+    	return testBit(mine, tileIndex(x, y));
     }
     
     
@@ -155,12 +164,12 @@ public class GameStateStandard extends GameStateModelViewer {
     protected boolean clearSquareHitMine(Location m) {
 
         // if there are no mines next to this location expand reveal
-        if (board[m.x][m.y] == 0) {
+        if (queryHandle(m.x, m.y) == 0) {
         	explode(m);
             //clearSurround(m);
         }
         
-        if (board[m.x][m.y] == GameStateModel.MINE) {
+        if (isMine(m.x, m.y)) {
             return true;
         } else {
             return false;
@@ -177,11 +186,11 @@ public class GameStateStandard extends GameStateModelViewer {
             return GameStateModel.EXPLODED_MINE;
         }
         
-        if (showMines && result == GameStateModel.HIDDEN && board[m.x][m.y] == GameStateModel.MINE) {
+        if (showMines && result == GameStateModel.HIDDEN && isMine(m.x, m.y)) {
             result = GameStateModel.MINE;
         }
 
-        if (showMines && result == GameStateModel.FLAG && board[m.x][m.y] != GameStateModel.MINE ) {
+        if (showMines && result == GameStateModel.FLAG && !isMine(m.x, m.y)) {
         	result = GameStateModel.BAD_FLAG;
         }
         
@@ -1,19 +1,28 @@
 package minesweeper.random;
 
+import java.lang.reflect.Constructor;
+
 public class DefaultRNG {
 
-	static private Class<? extends RNG> defaultRNG = RNGJava.class;
-	
-	
+	// creates a seeded random number generator
+	private interface Factory {
+		public RNG create(long seed);
+	}
+
+	static private volatile Class<? extends RNG> defaultRNG = RNGJava.class;
+	static private volatile Factory defaultFactory = getFactory(RNGJava.class);
+
+
 	/**
 	 * Set the default RNG implementation used when creating the mine sweeper boards
 	 * @param rngClass
 	 */
 	public static void setDefaultRNGClass(Class<? extends RNG> rngClass) {
+		defaultFactory = getFactory(rngClass);
 		defaultRNG = rngClass;
 	}
-	
-	
+
+
 	/**
 	 * Get the default RNG implementation used when creating the mine sweeper boards
 	 * @param rngClass
@@ -21,29 +30,75 @@ public class DefaultRNG {
 	public static Class<? extends RNG> getDefaultRNGClass() {
 		return defaultRNG;
 	}
-	
+
 	/**
 	 * Return an instance of the default random number generator with seed
 	 * @return
 	 */
 	public static RNG getRNG(long seed) {
-		
-		RNG rng = null;
+
+		return defaultFactory.create(seed);
+
+	}
+
+	// the factory for the class, the known implementations are created directly and any others through their constructor which is only looked up once
+	private static Factory getFactory(Class<? extends RNG> rngClass) {
+
+		if (rngClass == RNGJava.class) {
+			return new Factory() {
+				@Override
+				public RNG create(long seed) {
+					return new RNGJava(seed);
+				}
+			};
+		} else if (rngClass == RNGKiss64.class) {
+			return new Factory() {
+				@Override
+				public RNG create(long seed) {
+					return new RNGKiss64(seed);
+				}
+			};
+		} else if (rngClass == RNGJSF.class) {
+			return new Factory() {
+				@Override
+				public RNG create(long seed) {
+					return new RNGJSF(seed);
+				}
+			};
+		}
+
+		Constructor<? extends RNG> found = null;
 		try {
-			rng = defaultRNG.newInstance();
-			rng.seed(seed);
-		} catch (InstantiationException e) {
-			e.printStackTrace();
-		} catch (IllegalAccessException e) {
-			e.printStackTrace();
-		} catch (IllegalArgumentException e) {
+			found = rngClass.getConstructor();
+		} catch (NoSuchMethodException e) {
 			e.printStackTrace();
 		} catch (SecurityException e) {
 			e.printStackTrace();
 		}
-		
-		return rng;
-		
+
+		final Constructor<? extends RNG> constructor = found;
+
+		return new Factory() {
+			@Override
+			public RNG create(long seed) {
+
+				RNG rng = null;
+				if (constructor == null) {
+					return rng;
+				}
+				try {
+					rng = constructor.newInstance();
+					rng.seed(seed);
+				} catch (ReflectiveOperationException e) {
+					e.printStackTrace();
+				} catch (IllegalArgumentException e) {
+					e.printStackTrace();
+				}
+
+				return rng;
+			}
+		};
+
 	}
-	
+
 }